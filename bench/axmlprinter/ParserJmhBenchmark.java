@@ -0,0 +1,152 @@
+package axmlprinter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmlpull.v1.XmlPullParser;
+
+/**
+ * Measures the parsing stack: raw chunk iteration, string pool decoding,
+ * attribute lookup by name, printing to text and building
+ * {@link ManifestData}. Runs over the checked-in corpus in bench/corpus
+ * (written by {@link SyntheticManifests#main(String[])}).
+ *
+ * <pre>
+ * mvn -f bench/pom.xml package
+ * java -jar bench/target/benchmarks.jar -prof gc
+ * </pre>
+ *
+ * '-prof gc' adds allocated bytes per operation (gc.alloc.rate.norm) to the
+ * results. The corpus directory is relative to the working directory; pass
+ * '-p corpus=dir' to run from elsewhere.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserJmhBenchmark {
+
+	@Param({ "1", "10", "200" })
+	public int size;
+
+	@Param({ "false", "true" })
+	public boolean utf8;
+
+	@Param("bench/corpus")
+	public String corpus;
+
+	@Setup
+	public void setup() throws IOException {
+		File file = new File(corpus, "manifest_" + size + (utf8 ? "_utf8" : "") + ".axml");
+		m_data = new byte[(int) file.length()];
+		InputStream in = new FileInputStream(file);
+		try {
+			int offset = 0;
+			while (offset != m_data.length) {
+				int read = in.read(m_data, offset, m_data.length - offset);
+				if (read < 0) {
+					throw new IOException("Unexpected end of " + file + ".");
+				}
+				offset += read;
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads chunk headers and skips their bodies, the least work any parse
+	 * does.
+	 */
+	@Benchmark
+	public int chunks() throws IOException {
+		m_reader.reset(ByteBuffer.wrap(m_data), false);
+		m_reader.skip(8);
+		int chunks = 0;
+		while (m_reader.available() != 0) {
+			m_reader.readInt();
+			m_reader.skip(m_reader.readInt() - 8);
+			++chunks;
+		}
+		return chunks;
+	}
+
+	/**
+	 * Reads the string pool and decodes every string once.
+	 */
+	@Benchmark
+	public int strings() throws IOException {
+		m_reader.reset(ByteBuffer.wrap(m_data), false);
+		m_reader.skip(8);
+		StringBlock strings = StringBlock.read(m_reader);
+		int length = 0;
+		for (int i = 0, count = strings.getCount(); i != count; ++i) {
+			length += strings.getString(i).length();
+		}
+		return length;
+	}
+
+	/**
+	 * Looks up android:name on every start tag.
+	 */
+	@Benchmark
+	public int attributes() throws Exception {
+		m_parser.reset(m_data, 0, m_data.length);
+		int found = 0;
+		try {
+			int type;
+			while ((type = m_parser.next()) != XmlPullParser.END_DOCUMENT) {
+				if (type == XmlPullParser.START_TAG && m_parser.getAttributeValue(ANDROID_NS, "name") != null) {
+					++found;
+				}
+			}
+		} finally {
+			m_parser.close();
+		}
+		return found;
+	}
+
+	/**
+	 * Prints the document to a String.
+	 */
+	@Benchmark
+	public String print() {
+		return AXMLPrinter.getXMLFromStream(new ByteArrayInputStream(m_data));
+	}
+
+	/**
+	 * Builds ManifestData from the document.
+	 */
+	@Benchmark
+	public ManifestData manifestData() throws Exception {
+		m_parser.reset(m_data, 0, m_data.length);
+		try {
+			return AndroidManifestParser.parse(m_parser);
+		} finally {
+			m_parser.close();
+		}
+	}
+
+	private byte[] m_data;
+	private final IntReader m_reader = new IntReader();
+	private final AXmlResourceParser m_parser = new AXmlResourceParser();
+
+	private static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+}
@@ -0,0 +1,278 @@
+package axmlprinter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.util.TypedValue;
+
+/**
+ * Checks that {@link AXMLPrinter} prints byte-for-byte the same text as the
+ * String.format-based printer it replaced, which is kept here as the
+ * reference.
+ *
+ * <pre>
+ * java -cp ... axmlprinter.PrinterRegressionCheck [corpus directory...]
+ * </pre>
+ *
+ * Documents are the {@link SyntheticManifests} corpus in all its variants, a
+ * sweep of every value type over edge-case data, and the binary xml files in
+ * the given directories, by default the checked-in bench/corpus. Exits with
+ * status 1 on the first difference.
+ */
+public class PrinterRegressionCheck {
+
+	public static void main(String[] args) throws Exception {
+		Map<String, byte[]> documents = new LinkedHashMap<String, byte[]>();
+		for (int size : SyntheticManifests.SIZES) {
+			for (int variant = 0; variant != 4; ++variant) {
+				boolean utf8 = (variant & 1) != 0;
+				boolean resourceIds = (variant & 2) != 0;
+				documents.put("synthetic " + size + (utf8 ? " utf8" : "") + (resourceIds ? " ids" : ""),
+						SyntheticManifests.manifest(size, utf8, resourceIds));
+			}
+		}
+		addValueSweep(documents);
+		for (String directory : args.length != 0 ? args : DEFAULT_CORPUS) {
+			File[] files = new File(directory).listFiles();
+			if (files == null) {
+				throw new IOException("Cannot list " + directory + ".");
+			}
+			for (File file : files) {
+				if (file.isFile()) {
+					documents.put(file.getPath(), readFile(file));
+				}
+			}
+		}
+
+		for (Map.Entry<String, byte[]> document : documents.entrySet()) {
+			String expected = print(document.getValue(), true);
+			String actual = print(document.getValue(), false);
+			int difference = firstDifference(expected, actual);
+			if (difference != -1) {
+				System.out.println("FAILED " + document.getKey() + ": output differs at char " + difference);
+				System.out.println("expected: " + excerpt(expected, difference));
+				System.out.println("actual:   " + excerpt(actual, difference));
+				System.exit(1);
+			}
+		}
+		System.out.println(documents.size() + " documents print the same.");
+	}
+
+	// ///////////////////////////////// implementation
+
+	/**
+	 * Adds a document for every value type 0x00-0x1F (and a few beyond) with
+	 * data that hits the edge cases of its formatting, one value per
+	 * document, so that a value failing to print doesn't hide the rest.
+	 */
+	private static void addValueSweep(Map<String, byte[]> documents) {
+		int[] samples = { 0, 1, -1, 0x7FFFFFFF, 0x80000000, 0x01010054, 0x7F040001, 0x00001001, 0x00002000, 0x12345678, 0xFF00FF00, 0x0000000F,
+				0x00000100, 0xDEADBEEF, 0x000000FF };
+		List<Integer> types = new ArrayList<Integer>();
+		for (int type = 0; type != 0x20; ++type) {
+			types.add(type);
+		}
+		types.add(0x7F);
+		types.add(0xFF);
+		for (int type : types) {
+			for (int sample : samples) {
+				documents.put("value type " + type + " data " + Integer.toHexString(sample),
+						SyntheticManifests.values(new int[] { type }, new int[] { sample }));
+			}
+		}
+	}
+
+	/**
+	 * Returns printed text, followed by the exception if printing fails: the
+	 * old printer fails on some invalid values (dimension units over 7), and
+	 * the new one must fail the same way. The unfinished line is dropped, as
+	 * the old printer formatted parts of a line before appending them.
+	 */
+	private static String print(byte[] document, boolean reference) {
+		StringBuilder out = new StringBuilder();
+		try {
+			if (reference) {
+				printReference(document, out);
+			} else {
+				AXMLPrinter.print(new ByteArrayInputStream(document), out);
+			}
+		} catch (Exception e) {
+			out.setLength(out.lastIndexOf("\n") + 1);
+			out.append("[").append(e.getClass().getName()).append(']');
+		}
+		return out.toString();
+	}
+
+	private static int firstDifference(String a, String b) {
+		int length = Math.min(a.length(), b.length());
+		for (int i = 0; i != length; ++i) {
+			if (a.charAt(i) != b.charAt(i)) {
+				return i;
+			}
+		}
+		return a.length() != b.length() ? length : -1;
+	}
+
+	private static String excerpt(String text, int at) {
+		int start = Math.max(0, at - 40);
+		return text.substring(start, Math.min(text.length(), at + 40)).replace("\n", "\\n");
+	}
+
+	private static byte[] readFile(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] data = new byte[(int) file.length()];
+			int length = 0;
+			while (length != data.length) {
+				int read = in.read(data, length, data.length - length);
+				if (read == -1) {
+					throw new IOException(file + " is truncated.");
+				}
+				length += read;
+			}
+			return data;
+		} finally {
+			in.close();
+		}
+	}
+
+	/*
+	 * The printer as it was before AXMLPrinter stopped using String.format,
+	 * kept unchanged as the reference.
+	 */
+
+	private static void printReference(byte[] document, StringBuilder xmlSb) throws IOException, XmlPullParserException {
+		AXmlResourceParser parser = new AXmlResourceParser();
+		parser.open(new ByteArrayInputStream(document));
+		try {
+			StringBuilder sb = new StringBuilder(10);
+			final String indentStep = "	";
+
+			int type;
+			while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
+				switch (type) {
+				case XmlPullParser.START_DOCUMENT: {
+					log(xmlSb, "<?xml version=\"1.0\" encoding=\"utf-8\"?>");
+					break;
+				}
+				case XmlPullParser.START_TAG: {
+					log(false, xmlSb, "%s<%s%s", sb, getNamespacePrefix(parser.getPrefix()), parser.getName());
+					sb.append(indentStep);
+
+					int namespaceCountBefore = parser.getNamespaceCount(parser.getDepth() - 1);
+					int namespaceCount = parser.getNamespaceCount(parser.getDepth());
+
+					for (int i = namespaceCountBefore; i != namespaceCount; ++i) {
+						log(xmlSb, "%sxmlns:%s=\"%s\"", i == namespaceCountBefore ? "  " : sb, parser.getNamespacePrefix(i), parser.getNamespaceUri(i));
+					}
+
+					for (int i = 0, size = parser.getAttributeCount(); i != size; ++i) {
+						String attr = String.format("%s%s%s", " ", getNamespacePrefix(parser.getAttributePrefix(i)), parser.getAttributeName(i));
+						// hack!
+						if (attr.trim().equals("")) {
+							attr = R_Default.getName(parser.getAttributeNameResource(i));
+							if (attr.trim().equals("")) {
+								attr = " UNDEFINED";
+							} else {
+								attr = " android:" + attr;
+							}
+						}
+						// hack2!
+						String attr_value = getAttributeValue(parser, i).replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;")
+								.replace(">", "&gt;");
+						log(false, xmlSb, "%s=\"%s\"", attr, attr_value);
+					}
+					// log("%s>",sb);
+					log(xmlSb, ">");
+					break;
+				}
+				case XmlPullParser.END_TAG: {
+					sb.setLength(sb.length() - indentStep.length());
+					log(xmlSb, "%s</%s%s>", sb, getNamespacePrefix(parser.getPrefix()), parser.getName());
+					break;
+				}
+				case XmlPullParser.TEXT: {
+					log(xmlSb, "%s%s", sb, parser.getText());
+					break;
+				}
+				}
+			}
+		} finally {
+			parser.close();
+		}
+	}
+
+	private static String getNamespacePrefix(String prefix) {
+		if (prefix == null || prefix.length() == 0) {
+			return "";
+		}
+		return prefix + ":";
+	}
+
+	private static String getAttributeValue(AXmlResourceParser parser, int index) {
+		int type = parser.getAttributeValueType(index);
+		int data = parser.getAttributeValueData(index);
+		if (type == TypedValue.TYPE_STRING) {
+			return parser.getAttributeValue(index);
+		}
+		if (type == TypedValue.TYPE_ATTRIBUTE) {
+			return String.format("?%s%08X", getPackage(data), data);
+		}
+		if (type == TypedValue.TYPE_REFERENCE) {
+			return String.format("@%s%08X", getPackage(data), data);
+		}
+		if (type == TypedValue.TYPE_FLOAT) {
+			return String.valueOf(Float.intBitsToFloat(data));
+		}
+		if (type == TypedValue.TYPE_INT_HEX) {
+			return String.format("0x%08X", data);
+		}
+		if (type == TypedValue.TYPE_INT_BOOLEAN) {
+			return data != 0 ? "true" : "false";
+		}
+		if (type == TypedValue.TYPE_DIMENSION) {
+			return Float.toString(AXMLPrinter.complexToFloat(data)) + DIMENSION_UNITS[data & TypedValue.COMPLEX_UNIT_MASK];
+		}
+		if (type == TypedValue.TYPE_FRACTION) {
+			return Float.toString(AXMLPrinter.complexToFloat(data)) + FRACTION_UNITS[data & TypedValue.COMPLEX_UNIT_MASK];
+		}
+		if (type >= TypedValue.TYPE_FIRST_COLOR_INT && type <= TypedValue.TYPE_LAST_COLOR_INT) {
+			return String.format("#%08X", data);
+		}
+		if (type >= TypedValue.TYPE_FIRST_INT && type <= TypedValue.TYPE_LAST_INT) {
+			return String.valueOf(data);
+		}
+		return String.format("<0x%X, type 0x%02X>", data, type);
+	}
+
+	private static String getPackage(int id) {
+		if (id >>> 24 == 1) {
+			return "android:";
+		}
+		return "";
+	}
+
+	private static void log(StringBuilder xmlSb, String format, Object... arguments) {
+		log(true, xmlSb, format, arguments);
+	}
+
+	private static void log(boolean newLine, StringBuilder xmlSb, String format, Object... arguments) {
+		xmlSb.append(String.format(format, arguments));
+		if (newLine)
+			xmlSb.append("\n");
+	}
+
+	private static final String DIMENSION_UNITS[] = { "px", "dip", "sp", "pt", "in", "mm", "", "" };
+	private static final String FRACTION_UNITS[] = { "%", "%p", "", "", "", "", "", "" };
+
+	private static final String[] DEFAULT_CORPUS = { "bench/corpus" };
+}
@@ -0,0 +1,263 @@
+package axmlprinter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes synthetic binary AndroidManifest.xml documents, used as the
+ * benchmark corpus. Output only depends on the arguments, so every run
+ * measures the same bytes.
+ *
+ * Each component block adds an activity with an intent filter, a receiver,
+ * a service and a provider. Attribute values cover strings, references,
+ * booleans, ints, dimensions, fractions and colors.
+ */
+public class SyntheticManifests {
+
+	/**
+	 * Returns a manifest with the given number of component blocks.
+	 *
+	 * @param utf8
+	 *            whether the string pool is UTF-8 (else UTF-16).
+	 * @param resourceIds
+	 *            whether attribute names have a resource ID map, with one
+	 *            attribute name stripped, as in obfuscated APKs.
+	 */
+	public static byte[] manifest(int components, boolean utf8, boolean resourceIds) {
+		SyntheticManifests m = new SyntheticManifests(utf8);
+		String[] names = { "name", "versionCode", "exported", "priority", "minSdkVersion", "targetSdkVersion", "debuggable", "label", "icon",
+				"permission", "enabled", "process" };
+		int[] ids = { 0x01010003, 0x0101021b, 0x01010010, 0x0101001c, 0x0101020c, 0x01010270, 0x0101000f, 0x01010001, 0x01010002, 0x01010006,
+				0x0101000e, 0x01010011 };
+		if (resourceIds) {
+			for (int i = 0; i != names.length; ++i) {
+				m.string(names[i]);
+				m.m_resourceIds.add(ids[i]);
+			}
+			m.string("");
+			m.m_resourceIds.add(0x0101021c);
+		}
+
+		m.namespace(true);
+		if (resourceIds) {
+			m.start("manifest", a("versionCode", TYPE_INT, 42), plain("package", "com.example.app"), a("", TYPE_STRING, "1.0"));
+		} else {
+			m.start("manifest", a("versionCode", TYPE_INT, 42), plain("package", "com.example.app"));
+		}
+		m.start("uses-sdk", a("minSdkVersion", TYPE_INT, 8), a("targetSdkVersion", TYPE_INT, 19));
+		m.end("uses-sdk");
+		for (int i = 0; i != 3; ++i) {
+			m.start("uses-permission", a("name", TYPE_STRING, "android.permission.P" + i));
+			m.end("uses-permission");
+		}
+		m.start("permission", a("name", TYPE_STRING, "com.example.PERM"));
+		m.end("permission");
+		m.start("application", a("debuggable", TYPE_BOOLEAN, -1), a("label", TYPE_REFERENCE, 0x7f040001), a("icon", TYPE_REFERENCE, 0x7f020000),
+				a("theme", TYPE_ATTRIBUTE, 0x01010054));
+		for (int i = 0; i != components; ++i) {
+			m.start("activity", a("name", TYPE_STRING, ".Act" + i), a("exported", TYPE_BOOLEAN, i % 2 == 0 ? -1 : 0),
+					a("label", TYPE_STRING, "A & <b> \"q\""));
+			m.start("intent-filter", a("priority", TYPE_INT, i));
+			m.start("action", a("name", TYPE_STRING, i == 0 ? "android.intent.action.MAIN" : "com.example.ACTION" + i));
+			m.end("action");
+			m.start("category", a("name", TYPE_STRING, i == 0 ? "android.intent.category.LAUNCHER" : "android.intent.category.DEFAULT"));
+			m.end("category");
+			m.start("data", a("scheme", TYPE_STRING, "http"), a("host", TYPE_STRING, "h" + i + ".example.com"));
+			m.end("data");
+			m.end("intent-filter");
+			m.end("activity");
+			m.start("receiver", a("name", TYPE_STRING, "com.example.Recv" + i), a("permission", TYPE_STRING, "com.example.PERM"),
+					a("enabled", TYPE_BOOLEAN, 0));
+			m.start("intent-filter");
+			m.start("action", a("name", TYPE_STRING, "android.intent.action.BOOT_COMPLETED"));
+			m.end("action");
+			m.end("intent-filter");
+			m.end("receiver");
+			m.start("service", a("name", TYPE_STRING, "Svc" + i), a("process", TYPE_STRING, ":remote"));
+			m.end("service");
+			m.start("provider", a("name", TYPE_STRING, ".Prov" + i), a("readPermission", TYPE_STRING, "r.P"), a("writePermission", TYPE_STRING, "w.P"),
+					a("exported", TYPE_BOOLEAN, -1));
+			m.end("provider");
+		}
+		m.start("meta-data", a("name", TYPE_STRING, "k"), a("value", 0x11, 0xff), a("resource", 0x1c, 0xff00ff00), a("dim", 5, 0x1001),
+				a("f", 4, Float.floatToIntBits(1.5f)), a("frac", 6, 0x2000));
+		m.text("some text \u00e9 \u00fc \u4e2d");
+		m.end("meta-data");
+		m.end("application");
+		m.end("manifest");
+		m.namespace(false);
+		return m.build();
+	}
+
+	/**
+	 * Returns a document with one element per typed value, each with a
+	 * single attribute of the type (a {@link android.util.TypedValue} type)
+	 * and data at the same index.
+	 */
+	public static byte[] values(int[] types, int[] data) {
+		SyntheticManifests m = new SyntheticManifests(false);
+		m.namespace(true);
+		m.start("values");
+		for (int i = 0; i != types.length; ++i) {
+			m.start("value", a("v", types[i], types[i] == TYPE_STRING ? "s" + data[i] : data[i]));
+			m.end("value");
+		}
+		m.end("values");
+		m.namespace(false);
+		return m.build();
+	}
+
+	/**
+	 * Writes the benchmark corpus to the directory, for use with other tools.
+	 */
+	public static void main(String[] args) throws IOException {
+		File directory = new File(args.length != 0 ? args[0] : "corpus");
+		directory.mkdirs();
+		for (int size : SIZES) {
+			for (int utf8 = 0; utf8 != 2; ++utf8) {
+				String name = "manifest_" + size + (utf8 == 1 ? "_utf8" : "") + ".axml";
+				OutputStream out = new FileOutputStream(new File(directory, name));
+				try {
+					out.write(manifest(size, utf8 == 1, false));
+				} finally {
+					out.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Component counts of the benchmark corpus.
+	 */
+	public static final int[] SIZES = { 1, 10, 200 };
+
+	// ///////////////////////////////// implementation
+
+	private SyntheticManifests(boolean utf8) {
+		m_utf8 = utf8;
+	}
+
+	private static Object[] a(String name, int type, Object value) {
+		return new Object[] { ANDROID_NS, name, type, value };
+	}
+
+	private static Object[] plain(String name, String value) {
+		return new Object[] { null, name, TYPE_STRING, value };
+	}
+
+	private int string(String value) {
+		Integer index = m_index.get(value);
+		if (index == null) {
+			index = m_strings.size();
+			m_strings.add(value);
+			m_index.put(value, index);
+		}
+		return index;
+	}
+
+	private void namespace(boolean start) {
+		int[] chunk = { start ? 0x00100100 : 0x00100101, 24, m_line, -1, string("android"), string(ANDROID_NS) };
+		write(m_body, chunk);
+	}
+
+	private void start(String name, Object[]... attributes) {
+		write(m_body, new int[] { 0x00100102, 36 + 20 * attributes.length, m_line++, -1, -1, string(name), 0x00140014, attributes.length, 0 });
+		for (Object[] attribute : attributes) {
+			int type = (Integer) attribute[2];
+			int value = type == TYPE_STRING ? string((String) attribute[3]) : (Integer) attribute[3];
+			write(m_body, new int[] { attribute[0] == null ? -1 : string((String) attribute[0]), string((String) attribute[1]),
+					type == TYPE_STRING ? value : -1, 0x08 | (type << 24), value });
+		}
+	}
+
+	private void end(String name) {
+		write(m_body, new int[] { 0x00100103, 24, m_line++, -1, -1, string(name) });
+	}
+
+	private void text(String text) {
+		write(m_body, new int[] { 0x00100104, 28, m_line++, -1, string(text), 8, 0 });
+	}
+
+	private byte[] build() {
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		int[] offsets = new int[m_strings.size()];
+		for (int i = 0; i != offsets.length; ++i) {
+			offsets[i] = data.size();
+			String value = m_strings.get(i);
+			if (m_utf8) {
+				byte[] bytes = value.getBytes(UTF_8);
+				writeLength8(data, value.length());
+				writeLength8(data, bytes.length);
+				data.write(bytes, 0, bytes.length);
+				data.write(0);
+			} else {
+				data.write(value.length());
+				data.write(value.length() >> 8);
+				for (int c = 0; c != value.length(); ++c) {
+					data.write(value.charAt(c));
+					data.write(value.charAt(c) >> 8);
+				}
+				data.write(0);
+				data.write(0);
+			}
+		}
+		while (data.size() % 4 != 0) {
+			data.write(0);
+		}
+
+		ByteArrayOutputStream pool = new ByteArrayOutputStream();
+		int stringsStart = 28 + 4 * offsets.length;
+		write(pool, new int[] { 0x001C0001, stringsStart + data.size(), offsets.length, 0, m_utf8 ? 0x100 : 0, stringsStart, 0 });
+		write(pool, offsets);
+		pool.write(data.toByteArray(), 0, data.size());
+
+		int idsSize = m_resourceIds.isEmpty() ? 0 : 8 + 4 * m_resourceIds.size();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		write(out, new int[] { 0x00080003, 8 + pool.size() + idsSize + m_body.size() });
+		out.write(pool.toByteArray(), 0, pool.size());
+		if (idsSize != 0) {
+			write(out, new int[] { 0x00080180, idsSize });
+			for (int id : m_resourceIds) {
+				write(out, new int[] { id });
+			}
+		}
+		out.write(m_body.toByteArray(), 0, m_body.size());
+		return out.toByteArray();
+	}
+
+	private static void write(ByteArrayOutputStream out, int[] values) {
+		for (int value : values) {
+			out.write(value);
+			out.write(value >> 8);
+			out.write(value >> 16);
+			out.write(value >> 24);
+		}
+	}
+
+	private static void writeLength8(ByteArrayOutputStream out, int length) {
+		if (length > 0x7F) {
+			out.write(((length >> 8) & 0x7F) | 0x80);
+		}
+		out.write(length);
+	}
+
+	private final boolean m_utf8;
+	private final List<String> m_strings = new ArrayList<String>();
+	private final Map<String, Integer> m_index = new HashMap<String, Integer>();
+	private final List<Integer> m_resourceIds = new ArrayList<Integer>();
+	private final ByteArrayOutputStream m_body = new ByteArrayOutputStream();
+	private int m_line = 1;
+
+	private static final int TYPE_REFERENCE = 1, TYPE_ATTRIBUTE = 2, TYPE_STRING = 3, TYPE_INT = 0x10, TYPE_BOOLEAN = 0x12;
+
+	private static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+}
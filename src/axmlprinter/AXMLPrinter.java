@@ -24,8 +24,8 @@ import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.io.Writer;
+import java.util.Locale;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
@@ -42,123 +42,220 @@ public class AXMLPrinter {
 	private static final String DEFAULT_XML = "AndroidManifest.xml";
 
 	public static String getXMLFromStream(InputStream s) {
+		AXmlResourceParser parser = new AXmlResourceParser();
+		parser.open(s);
+		return getXML(parser);
+	}
+
+	private static String getXML(AXmlResourceParser parser) {
 		StringBuilder xmlSb = new StringBuilder(100);
-		AXmlResourceParser parser = null;
 		try {
-			parser = new AXmlResourceParser();
+			print(parser, xmlSb);
+		} catch (XmlPullParserException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		} finally {
+			parser.close();
+		}
+		return xmlSb.toString();
+	}
+
+	/**
+	 * Prints xml document from the binary xml stream to the writer, token by
+	 * token, and flushes the writer at the end.
+	 */
+	public static void print(InputStream s, Writer out) throws IOException, XmlPullParserException {
+		print(s, (Appendable) out);
+		out.flush();
+	}
+
+	/**
+	 * Prints xml document from the binary xml stream to 'out', token by token,
+	 * so that the document is never held in memory as a whole.
+	 */
+	public static void print(InputStream s, Appendable out) throws IOException, XmlPullParserException {
+		AXmlResourceParser parser = new AXmlResourceParser();
+		try {
 			parser.open(s);
+			print(parser, out);
+		} finally {
+			parser.close();
+		}
+	}
 
-			StringBuilder sb = new StringBuilder(10);
-			final String indentStep = "	";
+	static void print(AXmlResourceParser parser, Appendable out) throws IOException, XmlPullParserException {
+		StringBuilder sb = new StringBuilder(10);
+		final String indentStep = "	";
 
-			int type;
-			while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
-				switch (type) {
-				case XmlPullParser.START_DOCUMENT: {
-					log(xmlSb, "<?xml version=\"1.0\" encoding=\"utf-8\"?>");
-					break;
-				}
-				case XmlPullParser.START_TAG: {
-					log(false, xmlSb, "%s<%s%s", sb, getNamespacePrefix(parser.getPrefix()), parser.getName());
-					sb.append(indentStep);
+		int type;
+		while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
+			switch (type) {
+			case XmlPullParser.START_DOCUMENT: {
+				out.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+				break;
+			}
+			case XmlPullParser.START_TAG: {
+				out.append(sb).append('<');
+				appendNamespacePrefix(out, parser.getPrefix());
+				out.append(parser.getName());
+				sb.append(indentStep);
 
-					int namespaceCountBefore = parser.getNamespaceCount(parser.getDepth() - 1);
-					int namespaceCount = parser.getNamespaceCount(parser.getDepth());
+				int namespaceCountBefore = parser.getNamespaceCount(parser.getDepth() - 1);
+				int namespaceCount = parser.getNamespaceCount(parser.getDepth());
 
-					for (int i = namespaceCountBefore; i != namespaceCount; ++i) {
-						log(xmlSb, "%sxmlns:%s=\"%s\"", i == namespaceCountBefore ? "  " : sb, parser.getNamespacePrefix(i), parser.getNamespaceUri(i));
-					}
+				for (int i = namespaceCountBefore; i != namespaceCount; ++i) {
+					out.append(i == namespaceCountBefore ? "  " : sb).append("xmlns:").append(parser.getNamespacePrefix(i));
+					out.append("=\"").append(parser.getNamespaceUri(i)).append("\"\n");
+				}
 
-					for (int i = 0, size = parser.getAttributeCount(); i != size; ++i) {
-						String attr = String.format("%s%s%s", " ", getNamespacePrefix(parser.getAttributePrefix(i)), parser.getAttributeName(i));
-						// hack!
-						if (attr.trim().equals("")) {
-							attr = R_Default.getName(parser.getAttributeNameResource(i));
-							if (attr.trim().equals("")) {
-								attr = " UNDEFINED";
-							} else {
-								attr = " android:" + attr;
-							}
+				for (int i = 0, size = parser.getAttributeCount(); i != size; ++i) {
+					String prefix = parser.getAttributePrefix(i);
+					String name = parser.getAttributeName(i);
+					// hack!
+					if (isBlank(prefix) && isBlank(name)) {
+						name = R_Default.getName(parser.getAttributeNameResource(i));
+						if (isBlank(name)) {
+							out.append(" UNDEFINED");
+						} else {
+							out.append(" android:").append(name);
 						}
-						// hack2!
-						String attr_value = getAttributeValue(parser, i).replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;")
-								.replace(">", "&gt;");
-						log(false, xmlSb, "%s=\"%s\"", attr, attr_value);
+					} else {
+						out.append(' ');
+						appendNamespacePrefix(out, prefix);
+						out.append(name);
 					}
-					// log("%s>",sb);
-					log(xmlSb, ">");
-					break;
-				}
-				case XmlPullParser.END_TAG: {
-					sb.setLength(sb.length() - indentStep.length());
-					log(xmlSb, "%s</%s%s>", sb, getNamespacePrefix(parser.getPrefix()), parser.getName());
-					break;
-				}
-				case XmlPullParser.TEXT: {
-					log(xmlSb, "%s%s", sb, parser.getText());
-					break;
-				}
+					// hack2!
+					out.append("=\"");
+					appendEscaped(out, getAttributeValue(parser, i));
+					out.append('"');
 				}
+				out.append(">\n");
+				break;
+			}
+			case XmlPullParser.END_TAG: {
+				sb.setLength(sb.length() - indentStep.length());
+				out.append(sb).append("</");
+				appendNamespacePrefix(out, parser.getPrefix());
+				out.append(parser.getName()).append(">\n");
+				break;
+			}
+			case XmlPullParser.TEXT: {
+				out.append(sb).append(parser.getText()).append('\n');
+				break;
 			}
-
-		} catch (XmlPullParserException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} finally {
-			try {
-				parser.close();
-			} catch (Exception e) {
 			}
 		}
-		return xmlSb.toString();
 	}
 
-	public static String getManifestXMLFromAPK(File apkPath) {
-		ZipFile file = null;
-		String ret = null;
+	/**
+	 * Returns the xml entry of the APK as text, or null if it cannot be read.
+	 * References are printed by name if 'resources' (usually shared by all
+	 * entries of the APK, see {@link ResourceResolver#forApk(File)}) is not
+	 * null.
+	 */
+	public static String getXMLFromAPK(File apkPath, String entryName, ResourceResolver resources) {
+		ApkEntryReader reader = new ApkEntryReader();
 		try {
-			File apkFile = apkPath;
-			file = new ZipFile(apkFile, ZipFile.OPEN_READ);
-			ZipEntry entry = file.getEntry(DEFAULT_XML);
-			ret = getXMLFromStream(file.getInputStream(entry));
+			AXmlResourceParser parser = new AXmlResourceParser();
+			parser.setResourceResolver(resources);
+			parser.open(reader.read(apkPath, entryName));
+			return getXML(parser);
 		} catch (Exception e) {
 			e.printStackTrace();
+			return null;
 		} finally {
-			try {
-				file.close();
-			} catch (Exception e) {
+			reader.close();
+		}
+	}
+
+	public static String getManifestXMLFromAPK(File apkPath) {
+		return getXMLFromAPK(apkPath, DEFAULT_XML, null);
+	}
+
+	private static void appendNamespacePrefix(Appendable out, String prefix) throws IOException {
+		if (prefix != null && prefix.length() != 0) {
+			out.append(prefix).append(':');
+		}
+	}
+
+	/**
+	 * Same as 'value.trim().length() == 0', without creating a string.
+	 */
+	private static boolean isBlank(String value) {
+		for (int i = 0, length = value.length(); i != length; ++i) {
+			if (value.charAt(i) > ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Appends value with &amp;, &quot;, &lt; and &gt; escaped, in one pass.
+	 */
+	private static void appendEscaped(Appendable out, String value) throws IOException {
+		int start = 0;
+		for (int i = 0, length = value.length(); i != length; ++i) {
+			String entity;
+			switch (value.charAt(i)) {
+			case '&':
+				entity = "&amp;";
+				break;
+			case '"':
+				entity = "&quot;";
+				break;
+			case '<':
+				entity = "&lt;";
+				break;
+			case '>':
+				entity = "&gt;";
+				break;
+			default:
+				continue;
 			}
+			out.append(value, start, i).append(entity);
+			start = i + 1;
 		}
-		return ret;
+		out.append(value, start, value.length());
 	}
 
-	private static String getNamespacePrefix(String prefix) {
-		if (prefix == null || prefix.length() == 0) {
-			return "";
+	/**
+	 * Appends 'digits' upper-case hex digits of the value, the same as
+	 * String.format("%0<digits>X") for values that fit.
+	 */
+	private static StringBuilder appendHex(StringBuilder out, int value, int digits) {
+		for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+			out.append(HEX_DIGITS[(value >>> shift) & 0xF]);
 		}
-		return prefix + ":";
+		return out;
 	}
 
-	private static String getAttributeValue(AXmlResourceParser parser, int index) {
+	static String getAttributeValue(AXmlResourceParser parser, int index) {
 		int type = parser.getAttributeValueType(index);
 		int data = parser.getAttributeValueData(index);
 		if (type == TypedValue.TYPE_STRING) {
 			return parser.getAttributeValue(index);
 		}
+		if ((type == TypedValue.TYPE_ATTRIBUTE || type == TypedValue.TYPE_REFERENCE) && parser.getResourceResolver() != null) {
+			String name = parser.getResourceResolver().getName(data);
+			if (name != null) {
+				return (type == TypedValue.TYPE_REFERENCE ? "@" : "?") + name;
+			}
+		}
 		if (type == TypedValue.TYPE_ATTRIBUTE) {
-			return String.format("?%s%08X", getPackage(data), data);
+			return appendHex(new StringBuilder(17).append('?').append(getPackage(data)), data, 8).toString();
 		}
 		if (type == TypedValue.TYPE_REFERENCE) {
-			return String.format("@%s%08X", getPackage(data), data);
+			return appendHex(new StringBuilder(17).append('@').append(getPackage(data)), data, 8).toString();
 		}
 		if (type == TypedValue.TYPE_FLOAT) {
 			return String.valueOf(Float.intBitsToFloat(data));
 		}
 		if (type == TypedValue.TYPE_INT_HEX) {
-			return String.format("0x%08X", data);
+			return appendHex(new StringBuilder(10).append("0x"), data, 8).toString();
 		}
 		if (type == TypedValue.TYPE_INT_BOOLEAN) {
 			return data != 0 ? "true" : "false";
@@ -170,12 +267,13 @@ public class AXMLPrinter {
 			return Float.toString(complexToFloat(data)) + FRACTION_UNITS[data & TypedValue.COMPLEX_UNIT_MASK];
 		}
 		if (type >= TypedValue.TYPE_FIRST_COLOR_INT && type <= TypedValue.TYPE_LAST_COLOR_INT) {
-			return String.format("#%08X", data);
+			return appendHex(new StringBuilder(9).append('#'), data, 8).toString();
 		}
 		if (type >= TypedValue.TYPE_FIRST_INT && type <= TypedValue.TYPE_LAST_INT) {
 			return String.valueOf(data);
 		}
-		return String.format("<0x%X, type 0x%02X>", data, type);
+		StringBuilder sb = new StringBuilder(24).append("<0x").append(Integer.toHexString(data).toUpperCase(Locale.ENGLISH)).append(", type 0x");
+		return appendHex(sb, type, 2).append('>').toString();
 	}
 
 	private static String getPackage(int id) {
@@ -185,19 +283,6 @@ public class AXMLPrinter {
 		return "";
 	}
 
-	private static void log(StringBuilder xmlSb, String format, Object... arguments) {
-		log(true, xmlSb, format, arguments);
-	}
-
-	private static void log(boolean newLine, StringBuilder xmlSb, String format, Object... arguments) {
-		// System.out.println(String.format(format, arguments));
-		// System.out.printf(format,arguments);
-		// if(newLine) System.out.println();
-		xmlSb.append(String.format(format, arguments));
-		if (newLine)
-			xmlSb.append("\n");
-	}
-
 	// ///////////////////////////////// ILLEGAL STUFF, DONT LOOK :)
 
 	public static float complexToFloat(int complex) {
@@ -207,4 +292,5 @@ public class AXMLPrinter {
 	private static final float RADIX_MULTS[] = { 0.00390625F, 3.051758E-005F, 1.192093E-007F, 4.656613E-010F };
 	private static final String DIMENSION_UNITS[] = { "px", "dip", "sp", "pt", "in", "mm", "", "" };
 	private static final String FRACTION_UNITS[] = { "%", "%p", "", "", "", "", "", "" };
+	private static final char HEX_DIGITS[] = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
 }
\ No newline at end of file
@@ -0,0 +1,156 @@
+package axmlprinter;
+import org.xml.sax.Attributes;
+
+/**
+ * SAX {@link Attributes} view of the current START_TAG of an
+ * {@link AXmlResourceParser}, so that SAX handlers can be driven straight
+ * from binary XML.
+ *
+ * Names, URIs and values are the ones a SAX parser reports for the text
+ * produced by {@link AXMLPrinter#getXMLFromStream(java.io.InputStream)}:
+ * typed values are formatted the same way, attributes without a name are
+ * named after their resource ID, and whitespace in values is normalized.
+ * Values are formatted on request, so attributes that are never looked at
+ * cost nothing.
+ */
+final class AXmlAttributes implements Attributes {
+
+	public AXmlAttributes(AXmlResourceParser parser) {
+		m_parser = parser;
+	}
+
+	public int getLength() {
+		return m_parser.getAttributeCount();
+	}
+
+	public String getURI(int index) {
+		if (!isValid(index)) {
+			return null;
+		}
+		if (m_parser.getAttributeName(index).length() == 0) {
+			return isUndefined(index) ? "" : SdkConstants.NS_RESOURCES;
+		}
+		if (m_parser.getAttributePrefix(index).length() == 0) {
+			return "";
+		}
+		return m_parser.getAttributeNamespace(index);
+	}
+
+	public String getLocalName(int index) {
+		if (!isValid(index)) {
+			return null;
+		}
+		String name = m_parser.getAttributeName(index);
+		if (name.length() == 0) {
+			name = R_Default.getName(m_parser.getAttributeNameResource(index));
+			return name.trim().length() == 0 ? UNDEFINED : name;
+		}
+		return name;
+	}
+
+	public String getQName(int index) {
+		if (!isValid(index)) {
+			return null;
+		}
+		String name = m_parser.getAttributeName(index);
+		if (name.length() == 0) {
+			return isUndefined(index) ? UNDEFINED : "android:" + getLocalName(index);
+		}
+		String prefix = m_parser.getAttributePrefix(index);
+		if (prefix.length() == 0) {
+			return name;
+		}
+		return prefix + ":" + name;
+	}
+
+	public String getType(int index) {
+		return isValid(index) ? "CDATA" : null;
+	}
+
+	public String getValue(int index) {
+		if (!isValid(index)) {
+			return null;
+		}
+		return normalize(AXMLPrinter.getAttributeValue(m_parser, index));
+	}
+
+	public int getIndex(String uri, String localName) {
+		for (int i = 0, size = getLength(); i != size; ++i) {
+			if (localName.equals(getLocalName(i)) && uri.equals(getURI(i))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public int getIndex(String qName) {
+		for (int i = 0, size = getLength(); i != size; ++i) {
+			if (qName.equals(getQName(i))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public String getType(String uri, String localName) {
+		return getType(getIndex(uri, localName));
+	}
+
+	public String getType(String qName) {
+		return getType(getIndex(qName));
+	}
+
+	public String getValue(String uri, String localName) {
+		return getValue(getIndex(uri, localName));
+	}
+
+	public String getValue(String qName) {
+		return getValue(getIndex(qName));
+	}
+
+	// ///////////////////////////////// implementation
+
+	private boolean isValid(int index) {
+		return index >= 0 && index < getLength();
+	}
+
+	private boolean isUndefined(int index) {
+		return R_Default.getName(m_parser.getAttributeNameResource(index)).trim().length() == 0;
+	}
+
+	/**
+	 * Applies XML line-end handling and attribute-value normalization, which
+	 * an XML parser does to attribute values read from text.
+	 */
+	private static String normalize(String value) {
+		int length = value.length();
+		int i = 0;
+		while (i != length) {
+			char c = value.charAt(i);
+			if (c == '\t' || c == '\n' || c == '\r') {
+				break;
+			}
+			++i;
+		}
+		if (i == length) {
+			return value;
+		}
+		StringBuilder builder = new StringBuilder(length);
+		builder.append(value, 0, i);
+		for (; i != length; ++i) {
+			char c = value.charAt(i);
+			if (c == '\r' && i + 1 != length && value.charAt(i + 1) == '\n') {
+				continue;
+			}
+			if (c == '\t' || c == '\n' || c == '\r') {
+				c = ' ';
+			}
+			builder.append(c);
+		}
+		return builder.toString();
+	}
+
+	private static final String UNDEFINED = "UNDEFINED";
+
+	private final AXmlResourceParser m_parser;
+}
@@ -18,6 +18,8 @@ package axmlprinter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 
 import org.xmlpull.v1.XmlPullParserException;
 
@@ -34,6 +36,10 @@ import android.util.TypedValue;
  *         parser obtains after open(), close(), or failed call to next(). In
  *         this state methods return invalid values or throw exceptions.
  * 
+ *         When opened on a ByteBuffer or byte[], string pool and resource ids
+ *         are read through views of it, without copying. Attributes are read
+ *         into a buffer owned by the parser, so START_TAG does not allocate.
+ * 
  *         TODO: * check all methods in closed state
  * 
  */
@@ -45,11 +51,112 @@ public class AXmlResourceParser implements XmlResourceParser {
 
 	public void open(InputStream stream) {
 		close();
+		releaseSpares();
 		if (stream != null) {
 			m_reader = new IntReader(stream, false);
 		}
 	}
 
+	/**
+	 * Opens parser on the remaining bytes of the buffer (e.g. a
+	 * MappedByteBuffer). Buffer must not be modified while parser is open.
+	 */
+	public void open(ByteBuffer buffer) {
+		close();
+		releaseSpares();
+		if (buffer != null) {
+			m_reader = new IntReader(buffer, false);
+		}
+	}
+
+	public void open(byte[] data, int offset, int length) {
+		open(ByteBuffer.wrap(data, offset, length));
+	}
+
+	/**
+	 * Same as open(InputStream), but reuses reader buffer and string pool
+	 * caches of the previous document, so that a parser parsing many
+	 * documents in turn reaches a steady state without allocation. Strings
+	 * returned for the previous document stay valid.
+	 */
+	public void reset(InputStream stream) {
+		close();
+		if (stream != null) {
+			if (m_spareReader == null) {
+				m_spareReader = new IntReader();
+			}
+			m_spareReader.reset(stream, false);
+			m_reader = m_spareReader;
+		}
+	}
+
+	/**
+	 * Same as open(ByteBuffer), but reuses state of the previous document.
+	 * 
+	 * @see #reset(InputStream)
+	 */
+	public void reset(ByteBuffer buffer) {
+		close();
+		if (buffer != null) {
+			if (m_spareReader == null) {
+				m_spareReader = new IntReader();
+			}
+			m_spareReader.reset(buffer, false);
+			m_reader = m_spareReader;
+		}
+	}
+
+	public void reset(byte[] data, int offset, int length) {
+		reset(ByteBuffer.wrap(data, offset, length));
+	}
+
+	/**
+	 * Sets interner used for string pools of documents opened afterwards. May
+	 * be shared between parsers.
+	 */
+	public void setStringInterner(StringInterner interner) {
+		m_interner = interner;
+	}
+
+	/**
+	 * Sets resolver for references in attribute values. With a resolver,
+	 * getAttributeValue() returns references by name ("@string/app_name"),
+	 * and the typed getters follow references to the referenced values. May
+	 * be shared between parsers, usually those of one APK. Passing null
+	 * turns resolution off.
+	 */
+	public void setResourceResolver(ResourceResolver resources) {
+		m_resources = resources;
+	}
+
+	public ResourceResolver getResourceResolver() {
+		return m_resources;
+	}
+
+	/**
+	 * Sets names of elements reported by next(). Other elements are skipped
+	 * together with their subtrees, without reading their attributes, so the
+	 * filter must also contain ancestors of wanted elements. Names are matched
+	 * by string pool index. Passing null reports all elements.
+	 */
+	public void setElementFilter(String... names) {
+		m_elementFilterNames = (names != null ? names.clone() : null);
+		resolveElementFilter();
+	}
+
+	/**
+	 * Drops the string interner, resource resolver and element filter, so
+	 * that a reused parser parses like a new one. Called by
+	 * {@link AXmlResourceParserPool} before handing a parser to its next
+	 * user.
+	 */
+	public void clearSettings() {
+		m_interner = null;
+		m_resources = null;
+		m_elementFilterNames = null;
+		m_elementFilter = null;
+	}
+
 	public void close() {
 		if (!m_operational) {
 			return;
@@ -57,6 +164,9 @@ public class AXmlResourceParser implements XmlResourceParser {
 		m_operational = false;
 		m_reader.close();
 		m_reader = null;
+		if (m_strings == m_spareStrings) {
+			m_spareStrings.release();
+		}
 		m_strings = null;
 		m_resourceIDs = null;
 		m_namespaces.reset();
@@ -78,6 +188,34 @@ public class AXmlResourceParser implements XmlResourceParser {
 		}
 	}
 
+	/**
+	 * Skips contents of the current element, using chunk sizes, without
+	 * decoding them. Parser must be on START_TAG, and is left on the matching
+	 * END_TAG.
+	 */
+	public void skipSubtree() throws XmlPullParserException, IOException {
+		if (m_event != START_TAG) {
+			throw new XmlPullParserException("Parser must be on START_TAG to skip subtree.", this, null);
+		}
+		try {
+			int chunkSize = skipToEndTag();
+			int lineNumber = m_reader.readInt();
+			/* 0xFFFFFFFF */m_reader.skipInt();
+			int namespaceUri = m_reader.readInt();
+			int name = m_reader.readInt();
+			m_reader.skip(chunkSize - END_TAG_SIZE);
+			resetEventInfo();
+			m_lineNumber = lineNumber;
+			m_namespaceUri = namespaceUri;
+			m_name = name;
+			m_event = END_TAG;
+			m_decreaseDepth = true;
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
 	public int nextToken() throws XmlPullParserException, IOException {
 		return next();
 	}
@@ -208,7 +346,7 @@ public class AXmlResourceParser implements XmlResourceParser {
 			return defaultValue;
 		}
 		int offset = getAttributeOffset(m_idAttribute);
-		int valueType = m_attributes[offset + ATTRIBUTE_IX_VALUE_TYPE];
+		int valueType = (m_attributes[offset + ATTRIBUTE_IX_VALUE_TYPE] >>> 24);
 		if (valueType != TypedValue.TYPE_REFERENCE) {
 			return defaultValue;
 		}
@@ -227,7 +365,7 @@ public class AXmlResourceParser implements XmlResourceParser {
 		if (m_event != START_TAG) {
 			return -1;
 		}
-		return m_attributes.length / ATTRIBUTE_LENGHT;
+		return m_attributeCount;
 	}
 
 	public String getAttributeNamespace(int index) {
@@ -262,15 +400,15 @@ public class AXmlResourceParser implements XmlResourceParser {
 	public int getAttributeNameResource(int index) {
 		int offset = getAttributeOffset(index);
 		int name = m_attributes[offset + ATTRIBUTE_IX_NAME];
-		if (m_resourceIDs == null || name < 0 || name >= m_resourceIDs.length) {
+		if (m_resourceIDs == null || name < 0 || name >= m_resourceIDs.limit()) {
 			return 0;
 		}
-		return m_resourceIDs[name];
+		return m_resourceIDs.get(name);
 	}
 
 	public int getAttributeValueType(int index) {
 		int offset = getAttributeOffset(index);
-		return m_attributes[offset + ATTRIBUTE_IX_VALUE_TYPE];
+		return (m_attributes[offset + ATTRIBUTE_IX_VALUE_TYPE] >>> 24);
 	}
 
 	public int getAttributeValueData(int index) {
@@ -280,12 +418,18 @@ public class AXmlResourceParser implements XmlResourceParser {
 
 	public String getAttributeValue(int index) {
 		int offset = getAttributeOffset(index);
-		int valueType = m_attributes[offset + ATTRIBUTE_IX_VALUE_TYPE];
+		int valueType = (m_attributes[offset + ATTRIBUTE_IX_VALUE_TYPE] >>> 24);
 		if (valueType == TypedValue.TYPE_STRING) {
 			int valueString = m_attributes[offset + ATTRIBUTE_IX_VALUE_STRING];
 			return m_strings.getString(valueString);
 		}
 		int valueData = m_attributes[offset + ATTRIBUTE_IX_VALUE_DATA];
+		if ((valueType == TypedValue.TYPE_REFERENCE || valueType == TypedValue.TYPE_ATTRIBUTE) && m_resources != null) {
+			String name = m_resources.getName(valueData);
+			if (name != null) {
+				return (valueType == TypedValue.TYPE_REFERENCE ? "@" : "?") + name;
+			}
+		}
 		return "";// TypedValue.coerceToString(valueType,valueData);
 	}
 
@@ -295,9 +439,13 @@ public class AXmlResourceParser implements XmlResourceParser {
 
 	public float getAttributeFloatValue(int index, float defaultValue) {
 		int offset = getAttributeOffset(index);
-		int valueType = m_attributes[offset + ATTRIBUTE_IX_VALUE_TYPE];
+		int valueType = (m_attributes[offset + ATTRIBUTE_IX_VALUE_TYPE] >>> 24);
+		int valueData = m_attributes[offset + ATTRIBUTE_IX_VALUE_DATA];
+		if (valueType == TypedValue.TYPE_REFERENCE && m_resources != null) {
+			valueType = m_resources.getValueType(valueData);
+			valueData = m_resources.getValueData(valueData, 0);
+		}
 		if (valueType == TypedValue.TYPE_FLOAT) {
-			int valueData = m_attributes[offset + ATTRIBUTE_IX_VALUE_DATA];
 			return Float.intBitsToFloat(valueData);
 		}
 		return defaultValue;
@@ -305,9 +453,14 @@ public class AXmlResourceParser implements XmlResourceParser {
 
 	public int getAttributeIntValue(int index, int defaultValue) {
 		int offset = getAttributeOffset(index);
-		int valueType = m_attributes[offset + ATTRIBUTE_IX_VALUE_TYPE];
+		int valueType = (m_attributes[offset + ATTRIBUTE_IX_VALUE_TYPE] >>> 24);
+		int valueData = m_attributes[offset + ATTRIBUTE_IX_VALUE_DATA];
+		if (valueType == TypedValue.TYPE_REFERENCE && m_resources != null) {
+			valueType = m_resources.getValueType(valueData);
+			valueData = m_resources.getValueData(valueData, 0);
+		}
 		if (valueType >= TypedValue.TYPE_FIRST_INT && valueType <= TypedValue.TYPE_LAST_INT) {
-			return m_attributes[offset + ATTRIBUTE_IX_VALUE_DATA];
+			return valueData;
 		}
 		return defaultValue;
 	}
@@ -318,7 +471,7 @@ public class AXmlResourceParser implements XmlResourceParser {
 
 	public int getAttributeResourceValue(int index, int defaultValue) {
 		int offset = getAttributeOffset(index);
-		int valueType = m_attributes[offset + ATTRIBUTE_IX_VALUE_TYPE];
+		int valueType = (m_attributes[offset + ATTRIBUTE_IX_VALUE_TYPE] >>> 24);
 		if (valueType == TypedValue.TYPE_REFERENCE) {
 			return m_attributes[offset + ATTRIBUTE_IX_VALUE_DATA];
 		}
@@ -711,11 +864,10 @@ public class AXmlResourceParser implements XmlResourceParser {
 		if (m_event != START_TAG) {
 			throw new IndexOutOfBoundsException("Current event is not START_TAG.");
 		}
-		int offset = index * 5;
-		if (offset >= m_attributes.length) {
+		if (index >= m_attributeCount) {
 			throw new IndexOutOfBoundsException("Invalid attribute index (" + index + ").");
 		}
-		return offset;
+		return index * ATTRIBUTE_LENGHT;
 	}
 
 	private final int findAttribute(String namespace, String attribute) {
@@ -727,7 +879,7 @@ public class AXmlResourceParser implements XmlResourceParser {
 			return -1;
 		}
 		int uri = (namespace != null) ? m_strings.find(namespace) : -1;
-		for (int o = 0; o != m_attributes.length; ++o) {
+		for (int o = 0, length = m_attributeCount * ATTRIBUTE_LENGHT; o != length; o += ATTRIBUTE_LENGHT) {
 			if (name == m_attributes[o + ATTRIBUTE_IX_NAME] && (uri == -1 || uri == m_attributes[o + ATTRIBUTE_IX_NAMESPACE_URI])) {
 				return o / ATTRIBUTE_LENGHT;
 			}
@@ -735,12 +887,76 @@ public class AXmlResourceParser implements XmlResourceParser {
 		return -1;
 	}
 
+	/**
+	 * Skips chunks up to END_TAG that closes the current element. Returns
+	 * with reader positioned after that END_TAG's type and size, and returns
+	 * the size.
+	 */
+	private final int skipToEndTag() throws IOException {
+		for (int depth = 0;;) {
+			int chunkType = m_reader.readInt();
+			if (chunkType != CHUNK_RESOURCEIDS && (chunkType < CHUNK_XML_FIRST || chunkType > CHUNK_XML_LAST)) {
+				throw new IOException("Invalid chunk type (" + chunkType + ").");
+			}
+			int chunkSize = m_reader.readInt();
+			if (chunkSize < 8 || (chunkSize % 4) != 0) {
+				throw new IOException("Invalid chunk size (" + chunkSize + ").");
+			}
+			if (chunkType == CHUNK_XML_START_TAG) {
+				depth += 1;
+			} else if (chunkType == CHUNK_XML_END_TAG) {
+				if (depth == 0) {
+					if (chunkSize < END_TAG_SIZE) {
+						throw new IOException("Invalid chunk size (" + chunkSize + ").");
+					}
+					return chunkSize;
+				}
+				depth -= 1;
+			}
+			m_reader.skip(chunkSize - 8);
+		}
+	}
+
+	private final void resolveElementFilter() {
+		if (m_elementFilterNames == null) {
+			m_elementFilter = null;
+			return;
+		}
+		if (m_strings == null) {
+			return;
+		}
+		if (m_elementFilter == null || m_elementFilter.length != m_elementFilterNames.length) {
+			m_elementFilter = new int[m_elementFilterNames.length];
+		}
+		for (int i = 0; i != m_elementFilterNames.length; ++i) {
+			m_elementFilter[i] = m_strings.find(m_elementFilterNames[i]);
+		}
+	}
+
+	private final boolean isFiltered(int name) {
+		if (m_elementFilter == null) {
+			return false;
+		}
+		for (int i = 0; i != m_elementFilter.length; ++i) {
+			if (m_elementFilter[i] == name) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private final void releaseSpares() {
+		m_spareReader = null;
+		m_spareStrings = null;
+		m_spareResourceIDs = null;
+	}
+
 	private final void resetEventInfo() {
 		m_event = -1;
 		m_lineNumber = -1;
 		m_name = -1;
 		m_namespaceUri = -1;
-		m_attributes = null;
+		m_attributeCount = 0;
 		m_idAttribute = -1;
 		m_classAttribute = -1;
 		m_styleAttribute = -1;
@@ -751,9 +967,15 @@ public class AXmlResourceParser implements XmlResourceParser {
 		if (m_strings == null) {
 			ChunkUtil.readCheckType(m_reader, CHUNK_AXML_FILE);
 			/* chunkSize */m_reader.skipInt();
-			m_strings = StringBlock.read(m_reader);
+			if (m_reader == m_spareReader) {
+				m_spareStrings = StringBlock.read(m_reader, m_interner, m_spareStrings);
+				m_strings = m_spareStrings;
+			} else {
+				m_strings = StringBlock.read(m_reader, m_interner);
+			}
 			m_namespaces.increaseDepth();
 			m_operational = true;
+			resolveElementFilter();
 		}
 
 		if (m_event == END_DOCUMENT) {
@@ -788,7 +1010,14 @@ public class AXmlResourceParser implements XmlResourceParser {
 				if (chunkSize < 8 || (chunkSize % 4) != 0) {
 					throw new IOException("Invalid resource ids size (" + chunkSize + ").");
 				}
-				m_resourceIDs = m_reader.readIntArray(chunkSize / 4 - 2);
+				if (m_reader == m_spareReader) {
+					m_resourceIDs = m_reader.readIntBuffer(chunkSize / 4 - 2, m_spareResourceIDs);
+					if (m_reader.getStream() != null) {
+						m_spareResourceIDs = m_resourceIDs;
+					}
+				} else {
+					m_resourceIDs = m_reader.readIntBuffer(chunkSize / 4 - 2);
+				}
 				continue;
 			}
 
@@ -803,7 +1032,7 @@ public class AXmlResourceParser implements XmlResourceParser {
 			}
 
 			// Common header.
-			/* chunkSize */m_reader.skipInt();
+			int chunkSize = m_reader.readInt();
 			int lineNumber = m_reader.readInt();
 			/* 0xFFFFFFFF */m_reader.skipInt();
 
@@ -820,11 +1049,22 @@ public class AXmlResourceParser implements XmlResourceParser {
 				continue;
 			}
 
-			m_lineNumber = lineNumber;
-
 			if (chunkType == CHUNK_XML_START_TAG) {
-				m_namespaceUri = m_reader.readInt();
-				m_name = m_reader.readInt();
+				int namespaceUri = m_reader.readInt();
+				int name = m_reader.readInt();
+				if (isFiltered(name)) {
+					if (chunkSize < START_TAG_HEADER_SIZE) {
+						throw new IOException("Invalid chunk size (" + chunkSize + ").");
+					}
+					m_reader.skip(chunkSize - START_TAG_HEADER_SIZE);
+					m_reader.skip(skipToEndTag() - 8);
+					// As if END_TAG was reported, see fake END_DOCUMENT.
+					event = END_TAG;
+					continue;
+				}
+				m_lineNumber = lineNumber;
+				m_namespaceUri = namespaceUri;
+				m_name = name;
 				/* flags? */m_reader.skipInt();
 				int attributeCount = m_reader.readInt();
 				m_idAttribute = (attributeCount >>> 16) - 1;
@@ -832,16 +1072,20 @@ public class AXmlResourceParser implements XmlResourceParser {
 				m_classAttribute = m_reader.readInt();
 				m_styleAttribute = (m_classAttribute >>> 16) - 1;
 				m_classAttribute = (m_classAttribute & 0xFFFF) - 1;
-				m_attributes = m_reader.readIntArray(attributeCount * ATTRIBUTE_LENGHT);
-				for (int i = ATTRIBUTE_IX_VALUE_TYPE; i < m_attributes.length;) {
-					m_attributes[i] = (m_attributes[i] >>> 24);
-					i += ATTRIBUTE_LENGHT;
+				// Value type stays in the high byte of its slot.
+				int length = attributeCount * ATTRIBUTE_LENGHT;
+				if (m_attributes.length < length) {
+					m_attributes = new int[Math.max(length, m_attributes.length * 2)];
 				}
+				m_reader.readIntArray(m_attributes, 0, length);
+				m_attributeCount = attributeCount;
 				m_namespaces.increaseDepth();
 				m_event = START_TAG;
 				break;
 			}
 
+			m_lineNumber = lineNumber;
+
 			if (chunkType == CHUNK_XML_END_TAG) {
 				m_namespaceUri = m_reader.readInt();
 				m_name = m_reader.readInt();
@@ -871,7 +1115,21 @@ public class AXmlResourceParser implements XmlResourceParser {
 	private boolean m_operational = false;
 
 	private StringBlock m_strings;
-	private int[] m_resourceIDs;
+	private StringInterner m_interner;
+	private ResourceResolver m_resources;
+	/*
+	 * Element filter: names as set, and their indices in m_strings.
+	 */
+	private String[] m_elementFilterNames;
+	private int[] m_elementFilter;
+
+	/*
+	 * Kept between documents opened with reset().
+	 */
+	private IntReader m_spareReader;
+	private StringBlock m_spareStrings;
+	private IntBuffer m_spareResourceIDs;
+	private IntBuffer m_resourceIDs;
 	private NamespaceStack m_namespaces = new NamespaceStack();
 
 	private boolean m_decreaseDepth;
@@ -880,7 +1138,12 @@ public class AXmlResourceParser implements XmlResourceParser {
 	private int m_lineNumber;
 	private int m_name;
 	private int m_namespaceUri;
-	private int[] m_attributes;
+	/*
+	 * Attributes of current START_TAG, reused between tags. Only first
+	 * m_attributeCount records are valid.
+	 */
+	private int[] m_attributes = new int[16 * ATTRIBUTE_LENGHT];
+	private int m_attributeCount;
 	private int m_idAttribute;
 	private int m_classAttribute;
 	private int m_styleAttribute;
@@ -893,4 +1156,10 @@ public class AXmlResourceParser implements XmlResourceParser {
 	private static final int CHUNK_AXML_FILE = 0x00080003, CHUNK_RESOURCEIDS = 0x00080180, CHUNK_XML_FIRST = 0x00100100,
 			CHUNK_XML_START_NAMESPACE = 0x00100100, CHUNK_XML_END_NAMESPACE = 0x00100101, CHUNK_XML_START_TAG = 0x00100102, CHUNK_XML_END_TAG = 0x00100103,
 			CHUNK_XML_TEXT = 0x00100104, CHUNK_XML_LAST = 0x00100104;
+
+	/*
+	 * Bytes up to and including element name: type, size, line, comment,
+	 * namespace, name.
+	 */
+	private static final int START_TAG_HEADER_SIZE = 24, END_TAG_SIZE = 24;
 }
\ No newline at end of file
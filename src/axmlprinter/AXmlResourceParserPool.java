@@ -0,0 +1,84 @@
+package axmlprinter;
+import java.util.ArrayDeque;
+
+/**
+ * Pool of {@link AXmlResourceParser} instances, for workers that parse many
+ * documents. Parsers taken from the pool should be (re)opened with one of the
+ * reset() methods, so that their buffers and caches are reused. Settings of
+ * the previous user (string interner, resource resolver, element filter) are
+ * cleared, so each user starts from a parser that behaves like a new one.
+ * 
+ * <pre>
+ * AXmlResourceParser parser = pool.acquire();
+ * try {
+ * 	parser.reset(stream);
+ * 	...
+ * } finally {
+ * 	pool.release(parser);
+ * }
+ * </pre>
+ * 
+ * Pool is thread-safe. Alternatively, {@link #getThreadParser()} returns a
+ * parser confined to the calling thread.
+ */
+public final class AXmlResourceParserPool {
+
+	/**
+	 * Creates pool that keeps at most 'maxIdle' released parsers.
+	 */
+	public AXmlResourceParserPool(int maxIdle) {
+		m_maxIdle = maxIdle;
+	}
+
+	/**
+	 * Returns an idle parser, or a new one if there is none.
+	 */
+	public AXmlResourceParser acquire() {
+		synchronized (m_idle) {
+			AXmlResourceParser parser = m_idle.poll();
+			if (parser != null) {
+				return parser;
+			}
+		}
+		return new AXmlResourceParser();
+	}
+
+	/**
+	 * Closes the parser, clears its settings and returns it to the pool.
+	 */
+	public void release(AXmlResourceParser parser) {
+		if (parser == null) {
+			return;
+		}
+		parser.close();
+		parser.clearSettings();
+		synchronized (m_idle) {
+			if (m_idle.size() < m_maxIdle) {
+				m_idle.push(parser);
+			}
+		}
+	}
+
+	/**
+	 * Returns parser owned by the calling thread, with settings of its
+	 * previous user cleared. Callers must not nest uses of it, and should
+	 * close() it when done with a document.
+	 */
+	public static AXmlResourceParser getThreadParser() {
+		AXmlResourceParser parser = THREAD_PARSER.get();
+		parser.clearSettings();
+		return parser;
+	}
+
+	// ///////////////////////////////// data
+
+	private final ArrayDeque<AXmlResourceParser> m_idle = new ArrayDeque<AXmlResourceParser>();
+	private final int m_maxIdle;
+
+	private static final ThreadLocal<AXmlResourceParser> THREAD_PARSER = new ThreadLocal<AXmlResourceParser>() {
+		@Override
+		protected AXmlResourceParser initialValue() {
+			return new AXmlResourceParser();
+		}
+	};
+}
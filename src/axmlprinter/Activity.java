@@ -1,4 +1,6 @@
 package axmlprinter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
@@ -9,6 +11,7 @@ import org.xml.sax.Attributes;
  * Activity info obtained from the manifest.
  */
 public final class Activity implements Serializable {
+	private static final long serialVersionUID = 7733387253270843730L;
 	private final String mName;
 	private int mIsExported = -1; // -1 unknown yet, 0 false, 1 true
 	private boolean mHasAction = false;
@@ -16,7 +19,10 @@ public final class Activity implements Serializable {
 	private boolean mHasLauncherCategory = false;
 	private List<IntentFilter> mIntentFilter = new ArrayList<IntentFilter>();
 	private IntentFilter lastIntentFilter;
+	// created from the arrays on first request
 	private ArrayList<StringAttribute> stringAttributes;
+	private String[] mAttributeNames;
+	private String[] mAttributeValues;
 
 	public Activity(String name) {
 		mName = name;
@@ -82,6 +88,14 @@ public final class Activity implements Serializable {
 		}
 	}
 
+	boolean hasMainAction() {
+		return mHasMainAction;
+	}
+
+	boolean hasLauncherCategory() {
+		return mHasLauncherCategory;
+	}
+
 	void setHasMainAction(boolean hasMainAction) {
 		mHasMainAction = hasMainAction;
 	}
@@ -104,13 +118,57 @@ public final class Activity implements Serializable {
 	}
 
 	public void setAttributes(Attributes attributes) {
-		this.stringAttributes = new ArrayList<StringAttribute>();
-		for (int i = 0; i < attributes.getLength(); i++) {
-			this.stringAttributes.add(new StringAttribute(attributes.getLocalName(i), attributes.getValue(i)));
+		int count = attributes.getLength();
+		String[] names = new String[count];
+		String[] values = new String[count];
+		for (int i = 0; i < count; i++) {
+			names[i] = attributes.getLocalName(i);
+			values[i] = attributes.getValue(i);
 		}
+		setAttributes(names, values);
+	}
+
+	/**
+	 * Sets attributes as parallel arrays of local names and values.
+	 */
+	void setAttributes(String[] names, String[] values) {
+		mAttributeNames = names;
+		mAttributeValues = values;
+		stringAttributes = null;
+	}
+
+	String[] getAttributeNames() {
+		return mAttributeNames;
+	}
+
+	String[] getAttributeValues() {
+		return mAttributeValues;
 	}
 	
 	public ArrayList<StringAttribute> getStringAttributes() {
+		if (stringAttributes == null && mAttributeNames != null) {
+			stringAttributes = new ArrayList<StringAttribute>(mAttributeNames.length);
+			for (int i = 0; i < mAttributeNames.length; i++) {
+				stringAttributes.add(new StringAttribute(mAttributeNames[i], mAttributeValues[i]));
+			}
+		}
 		return stringAttributes;
 	}
+
+	/**
+	 * Objects serialized before the attribute arrays were added only have
+	 * the StringAttribute list, so the arrays are rebuilt from it.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (mAttributeNames == null && stringAttributes != null) {
+			int count = stringAttributes.size();
+			mAttributeNames = new String[count];
+			mAttributeValues = new String[count];
+			for (int i = 0; i < count; i++) {
+				mAttributeNames[i] = stringAttributes.get(i).getName();
+				mAttributeValues[i] = stringAttributes.get(i).getValue();
+			}
+		}
+	}
 }
\ No newline at end of file
@@ -1,9 +1,7 @@
 package axmlprinter;
 import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
 
-import org.w3c.dom.Node;
 import org.xml.sax.InputSource;
 
 public final class AndroidManifest {
@@ -108,9 +106,7 @@ public final class AndroidManifest {
 	 *             If any error happens when reading the manifest.
 	 */
 	public static String getPackage(IAbstractFile manifestFile) throws XPathExpressionException, StreamException {
-		XPath xPath = AndroidXPathFactory.newXPath();
-
-		return xPath.evaluate("/" + NODE_MANIFEST + "/@" + ATTRIBUTE_PACKAGE, new InputSource(manifestFile.getContents()));
+		return ManifestQuery.get(manifestFile).getPackage();
 	}
 
 	/**
@@ -127,13 +123,7 @@ public final class AndroidManifest {
 	 *             If any error happens when reading the manifest.
 	 */
 	public static boolean getDebuggable(IAbstractFile manifestFile) throws XPathExpressionException, StreamException {
-		XPath xPath = AndroidXPathFactory.newXPath();
-
-		String value = xPath.evaluate("/" + NODE_MANIFEST + "/" + NODE_APPLICATION + "/@" + AndroidXPathFactory.DEFAULT_NS_PREFIX + ":" + ATTRIBUTE_DEBUGGABLE,
-				new InputSource(manifestFile.getContents()));
-
-		// default is not debuggable, which is the same behavior as parseBoolean
-		return Boolean.parseBoolean(value);
+		return ManifestQuery.get(manifestFile).getDebuggable();
 	}
 
 	/**
@@ -148,16 +138,7 @@ public final class AndroidManifest {
 	 *             If any error happens when reading the manifest.
 	 */
 	public static int getVersionCode(IAbstractFile manifestFile) throws XPathExpressionException, StreamException {
-		XPath xPath = AndroidXPathFactory.newXPath();
-
-		String result = xPath.evaluate("/" + NODE_MANIFEST + "/@" + AndroidXPathFactory.DEFAULT_NS_PREFIX + ":" + ATTRIBUTE_VERSIONCODE, new InputSource(
-				manifestFile.getContents()));
-
-		try {
-			return Integer.parseInt(result);
-		} catch (NumberFormatException e) {
-			return -1;
-		}
+		return ManifestQuery.get(manifestFile).getVersionCode();
 	}
 
 	/**
@@ -172,19 +153,7 @@ public final class AndroidManifest {
 	 *             If any error happens when reading the manifest.
 	 */
 	public static boolean hasVersionCode(IAbstractFile manifestFile) throws XPathExpressionException, StreamException {
-		XPath xPath = AndroidXPathFactory.newXPath();
-
-		Object result = xPath.evaluate("/" + NODE_MANIFEST + "/@" + AndroidXPathFactory.DEFAULT_NS_PREFIX + ":" + ATTRIBUTE_VERSIONCODE, new InputSource(
-				manifestFile.getContents()), XPathConstants.NODE);
-
-		if (result != null) {
-			Node node = (Node) result;
-			if (node.getNodeValue().length() > 0) {
-				return true;
-			}
-		}
-
-		return false;
+		return ManifestQuery.get(manifestFile).hasVersionCode();
 	}
 
 	/**
@@ -206,16 +175,7 @@ public final class AndroidManifest {
 	 *             If any error happens when reading the manifest.
 	 */
 	public static Object getMinSdkVersion(IAbstractFile manifestFile) throws XPathExpressionException, StreamException {
-		XPath xPath = AndroidXPathFactory.newXPath();
-
-		String result = xPath.evaluate("/" + NODE_MANIFEST + "/" + NODE_USES_SDK + "/@" + AndroidXPathFactory.DEFAULT_NS_PREFIX + ":"
-				+ ATTRIBUTE_MIN_SDK_VERSION, new InputSource(manifestFile.getContents()));
-
-		try {
-			return Integer.valueOf(result);
-		} catch (NumberFormatException e) {
-			return result.length() > 0 ? result : null;
-		}
+		return ManifestQuery.get(manifestFile).getMinSdkVersion();
 	}
 
 	/**
@@ -242,16 +202,7 @@ public final class AndroidManifest {
 	 *             If any error happens when reading the manifest.
 	 */
 	public static Integer getTargetSdkVersion(IAbstractFile manifestFile) throws XPathExpressionException, StreamException {
-		XPath xPath = AndroidXPathFactory.newXPath();
-
-		String result = xPath.evaluate("/" + NODE_MANIFEST + "/" + NODE_USES_SDK + "/@" + AndroidXPathFactory.DEFAULT_NS_PREFIX + ":"
-				+ ATTRIBUTE_TARGET_SDK_VERSION, new InputSource(manifestFile.getContents()));
-
-		try {
-			return Integer.valueOf(result);
-		} catch (NumberFormatException e) {
-			return result.length() > 0 ? -1 : null;
-		}
+		return ManifestQuery.get(manifestFile).getTargetSdkVersion();
 	}
 
 	/**
@@ -265,10 +216,7 @@ public final class AndroidManifest {
 	 *             If any error happens when reading the manifest.
 	 */
 	public static String getApplicationIcon(IAbstractFile manifestFile) throws XPathExpressionException, StreamException {
-		XPath xPath = AndroidXPathFactory.newXPath();
-
-		return xPath.evaluate("/" + NODE_MANIFEST + "/" + NODE_APPLICATION + "/@" + AndroidXPathFactory.DEFAULT_NS_PREFIX + ":" + ATTRIBUTE_ICON,
-				new InputSource(manifestFile.getContents()));
+		return ManifestQuery.get(manifestFile).getApplicationIcon();
 	}
 
 	/**
@@ -282,10 +230,7 @@ public final class AndroidManifest {
 	 *             If any error happens when reading the manifest.
 	 */
 	public static String getApplicationLabel(IAbstractFile manifestFile) throws XPathExpressionException, StreamException {
-		XPath xPath = AndroidXPathFactory.newXPath();
-
-		return xPath.evaluate("/" + NODE_MANIFEST + "/" + NODE_APPLICATION + "/@" + AndroidXPathFactory.DEFAULT_NS_PREFIX + ":" + ATTRIBUTE_LABEL,
-				new InputSource(manifestFile.getContents()));
+		return ManifestQuery.get(manifestFile).getApplicationLabel();
 	}
 
 	/**
@@ -17,6 +17,8 @@ import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 import org.xml.sax.helpers.DefaultHandler;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 //import org.apache.commons.io.input.BOMInputStream;
 
@@ -663,9 +665,42 @@ public class AndroidManifestParser {
 
 	private final static SAXParserFactory sParserFactory;
 
+	/**
+	 * Idle parser of each thread. A parser is taken out while it is in use, so
+	 * nested parses on one thread get a new one.
+	 */
+	private final static ThreadLocal<SAXParser> sParser = new ThreadLocal<SAXParser>();
+
 	static {
 		sParserFactory = SAXParserFactory.newInstance();
 		sParserFactory.setNamespaceAware(true);
+		sParserFactory.setValidating(false);
+	}
+
+	/**
+	 * Returns the idle parser of the calling thread, or a new one. Must be
+	 * given back with {@link #releaseParser(SAXParser)}.
+	 */
+	private static SAXParser acquireParser() throws ParserConfigurationException, SAXException {
+		SAXParser parser = sParser.get();
+		if (parser != null) {
+			sParser.set(null);
+			return parser;
+		}
+		// the factory is not guaranteed to be thread-safe
+		synchronized (sParserFactory) {
+			return sParserFactory.newSAXParser();
+		}
+	}
+
+	private static void releaseParser(SAXParser parser) {
+		try {
+			parser.reset();
+		} catch (UnsupportedOperationException e) {
+			// parser can't be reused
+			return;
+		}
+		sParser.set(parser);
 	}
 
 	/**
@@ -688,15 +723,18 @@ public class AndroidManifestParser {
 	public static ManifestData parse(IAbstractFile manifestFile, boolean gatherData, ManifestErrorHandler errorHandler) throws SAXException, IOException,
 			StreamException, ParserConfigurationException {
 		if (manifestFile != null) {
-			SAXParser parser = sParserFactory.newSAXParser();
-
 			ManifestData data = null;
 			if (gatherData) {
 				data = new ManifestData();
 			}
 
 			ManifestHandler manifestHandler = new ManifestHandler(manifestFile, data, errorHandler);
-			parser.parse(new InputSource(manifestFile.getContents()), manifestHandler);
+			SAXParser parser = acquireParser();
+			try {
+				parser.parse(new InputSource(manifestFile.getContents()), manifestHandler);
+			} finally {
+				releaseParser(parser);
+			}
 
 			return data;
 		}
@@ -752,17 +790,88 @@ public class AndroidManifestParser {
 			// BOMInputStream bomis = new BOMInputStream(manifestFileStream);
 			InputSource is = new InputSource(manifestFileStream);
 			// is.setEncoding("UTF-8");
-			sParserFactory.setValidating(false);
-			SAXParser parser = sParserFactory.newSAXParser();
-
 			ManifestData data = new ManifestData();
 
 			ManifestHandler manifestHandler = new ManifestHandler(null, data, null);
-			parser.parse(is, manifestHandler);
+			SAXParser parser = acquireParser();
+			try {
+				parser.parse(is, manifestHandler);
+			} finally {
+				releaseParser(parser);
+			}
 
 			return data;
 		}
 
 		return null;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Parses a binary Android Manifest (as stored in an APK) from an
+	 * {@link InputStream}, and returns a {@link ManifestData} object containing
+	 * the result of the parsing.
+	 * <p/>
+	 * This gives the same result as parsing the output of
+	 * {@link AXMLPrinter#getXMLFromStream(InputStream)} with
+	 * {@link #parse(InputStream)}, without producing and re-parsing the text.
+	 * 
+	 * @param manifestFileStream
+	 *            the {@link InputStream} representing the binary manifest.
+	 * @return
+	 * @throws IOException
+	 * @throws SAXException
+	 */
+	public static ManifestData parseBinary(InputStream manifestFileStream) throws SAXException, IOException {
+		if (manifestFileStream != null) {
+			AXmlResourceParser parser = new AXmlResourceParser();
+			try {
+				parser.open(manifestFileStream);
+				return parse(parser);
+			} finally {
+				parser.close();
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Parses the Android Manifest from an opened {@link AXmlResourceParser},
+	 * and returns a {@link ManifestData} object containing the result of the
+	 * parsing. Parser is read up to the end of the document, but not closed.
+	 * 
+	 * @param parser
+	 *            the parser, positioned at the start of the document.
+	 * @return
+	 * @throws IOException
+	 * @throws SAXException
+	 */
+	public static ManifestData parse(AXmlResourceParser parser) throws SAXException, IOException {
+		ManifestData data = new ManifestData();
+
+		ManifestHandler manifestHandler = new ManifestHandler(null, data, null);
+		AXmlAttributes attributes = new AXmlAttributes(parser);
+		try {
+			int type;
+			while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
+				if (type == XmlPullParser.START_TAG) {
+					manifestHandler.startElement(parser.getNamespace(), parser.getName(), getQName(parser), attributes);
+				} else if (type == XmlPullParser.END_TAG) {
+					manifestHandler.endElement(parser.getNamespace(), parser.getName(), getQName(parser));
+				}
+			}
+		} catch (XmlPullParserException e) {
+			throw new SAXException(e);
+		}
+
+		return data;
+	}
+
+	private static String getQName(AXmlResourceParser parser) {
+		String prefix = parser.getPrefix();
+		if (prefix == null || prefix.length() == 0) {
+			return parser.getName();
+		}
+		return prefix + ":" + parser.getName();
+	}
+}
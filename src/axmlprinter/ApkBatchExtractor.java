@@ -0,0 +1,447 @@
+package axmlprinter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.xml.sax.SAXException;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Extracts AndroidManifest.xml from many APKs concurrently.
+ *
+ * <pre>
+ * ApkBatchExtractor extractor = new ApkBatchExtractor(8, 64, ApkBatchExtractor.Output.MANIFEST_DATA);
+ * extractor.extract(new File("apks"), new ApkBatchExtractor.Callback() {
+ * 	public void onResult(ApkBatchExtractor.Result result) {
+ * 		...
+ * 	}
+ * });
+ * </pre>
+ *
+ * Directories are walked as they are submitted, and at most 'maxPending'
+ * files wait for a worker, so memory does not grow with the number of APKs.
+ * Failures are reported per file through {@link Result#getError()}.
+ * <p/>
+ * For APKs on slow storage, {@link #newVirtualThreadExtractor} runs each APK
+ * on its own virtual thread and decodes on a separate pool, so that many
+ * reads can wait at once without oversubscribing the CPU.
+ */
+public class ApkBatchExtractor {
+
+	/**
+	 * What is extracted from each APK.
+	 */
+	public enum Output {
+		/** {@link ManifestData}, built straight from the binary manifest. */
+		MANIFEST_DATA,
+		/** Manifest text, as printed by {@link AXMLPrinter}. */
+		XML
+	}
+
+	/**
+	 * Receives results. Called from the worker threads, so it has to be
+	 * thread-safe, and should not block for long.
+	 */
+	public interface Callback {
+		void onResult(Result result);
+	}
+
+	/**
+	 * Outcome for one APK: either the manifest or the error.
+	 */
+	public static final class Result {
+
+		Result(File file, ManifestData manifest, String xml, Exception error) {
+			m_file = file;
+			m_manifest = manifest;
+			m_xml = xml;
+			m_error = error;
+		}
+
+		public File getFile() {
+			return m_file;
+		}
+
+		/**
+		 * Returns parsed manifest, or null if extraction failed or output is
+		 * {@link Output#XML}.
+		 */
+		public ManifestData getManifest() {
+			return m_manifest;
+		}
+
+		/**
+		 * Returns manifest text, or null if extraction failed or output is
+		 * {@link Output#MANIFEST_DATA}.
+		 */
+		public String getXml() {
+			return m_xml;
+		}
+
+		/**
+		 * Returns why extraction failed, or null if it succeeded.
+		 */
+		public Exception getError() {
+			return m_error;
+		}
+
+		public boolean isSuccess() {
+			return m_error == null;
+		}
+
+		@Override
+		public String toString() {
+			return m_file + (m_error == null ? ": ok" : ": " + m_error);
+		}
+
+		private final File m_file;
+		private final ManifestData m_manifest;
+		private final String m_xml;
+		private final Exception m_error;
+	}
+
+	/**
+	 * Creates extractor that runs 'threads' workers, with at most 'maxPending'
+	 * files queued for them.
+	 */
+	public ApkBatchExtractor(int threads, int maxPending, Output output) {
+		this(threads, maxPending, 0, output);
+		if (threads < 1 || maxPending < 0) {
+			throw new IllegalArgumentException("Invalid pool size (threads=" + threads + ", maxPending=" + maxPending + ").");
+		}
+	}
+
+	/**
+	 * With 'cpuThreads' != 0, files are read on virtual threads and decoded
+	 * on a pool of that size.
+	 */
+	ApkBatchExtractor(int threads, int maxPending, int cpuThreads, Output output) {
+		m_threads = threads;
+		m_maxPending = maxPending;
+		m_output = output;
+		m_cpuThreads = cpuThreads;
+	}
+
+	/**
+	 * Creates extractor that reads each APK on a new virtual thread, with at
+	 * most 'maxConcurrent' APKs open at once, and decodes the manifests on a
+	 * pool of 'cpuThreads' platform threads. Needs Java 21 or newer.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             if the runtime has no virtual threads.
+	 */
+	public static ApkBatchExtractor newVirtualThreadExtractor(int maxConcurrent, int cpuThreads, Output output) {
+		if (maxConcurrent < 1 || cpuThreads < 1) {
+			throw new IllegalArgumentException("Invalid pool size (maxConcurrent=" + maxConcurrent + ", cpuThreads=" + cpuThreads + ").");
+		}
+		if (!isVirtualThreadSupported()) {
+			throw new UnsupportedOperationException("Virtual threads need Java 21 or newer.");
+		}
+		return new ApkBatchExtractor(maxConcurrent, 0, cpuThreads, output);
+	}
+
+	/**
+	 * Returns whether {@link #newVirtualThreadExtractor} can be used.
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return getVirtualThreadFactory() != null;
+	}
+
+	/**
+	 * Extracts the APK, or all *.apk files under the directory. Returns when
+	 * all results have been delivered.
+	 */
+	public void extract(File fileOrDirectory, Callback callback) throws InterruptedException {
+		Batch batch = new Batch(callback);
+		try {
+			if (!fileOrDirectory.isDirectory()) {
+				batch.submit(fileOrDirectory);
+			} else {
+				ArrayDeque<File> directories = new ArrayDeque<File>();
+				directories.push(fileOrDirectory);
+				while (!directories.isEmpty()) {
+					File[] files = directories.pop().listFiles();
+					if (files == null) {
+						continue;
+					}
+					Arrays.sort(files);
+					for (int i = files.length - 1; i >= 0; --i) {
+						if (files[i].isDirectory()) {
+							directories.push(files[i]);
+						}
+					}
+					for (File file : files) {
+						if (file.isFile() && file.getName().toLowerCase().endsWith(".apk")) {
+							batch.submit(file);
+						}
+					}
+				}
+			}
+		} finally {
+			batch.finish();
+		}
+	}
+
+	/**
+	 * Extracts the given APKs. Files are taken from the iterable as workers
+	 * become free. Returns when all results have been delivered.
+	 */
+	public void extract(Iterable<File> files, Callback callback) throws InterruptedException {
+		Batch batch = new Batch(callback);
+		try {
+			for (File file : files) {
+				batch.submit(file);
+			}
+		} finally {
+			batch.finish();
+		}
+	}
+
+	/**
+	 * Extracts one APK on the calling thread.
+	 */
+	public Result extract(File apk) {
+		ApkEntryReader reader = new ApkEntryReader();
+		try {
+			return extract(apk, reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	// ///////////////////////////////// implementation
+
+	Result extract(File apk, ApkEntryReader reader) {
+		try {
+			return parse(apk, reader.readManifest(apk));
+		} catch (Exception e) {
+			return new Result(apk, null, null, e);
+		}
+	}
+
+	/**
+	 * Reads the manifest on the calling thread and decodes it on the CPU pool.
+	 */
+	Result extract(File apk, ApkEntryReader reader, ExecutorService cpuExecutor) {
+		try {
+			final File file = apk;
+			final byte[] data = readManifest(reader, apk);
+			Future<Result> result = cpuExecutor.submit(new Callable<Result>() {
+				public Result call() throws Exception {
+					return parse(file, ByteBuffer.wrap(data));
+				}
+			});
+			return result.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			return new Result(apk, null, null, (Exception) cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return new Result(apk, null, null, e);
+		} catch (Exception e) {
+			return new Result(apk, null, null, e);
+		}
+	}
+
+	/**
+	 * Returns the raw bytes of the APK's manifest.
+	 */
+	static byte[] readManifest(File apk) throws IOException {
+		ApkEntryReader reader = new ApkEntryReader();
+		try {
+			return readManifest(reader, apk);
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static byte[] readManifest(ApkEntryReader reader, File apk) throws IOException {
+		ByteBuffer manifest = reader.readManifest(apk);
+		byte[] data = new byte[manifest.remaining()];
+		manifest.get(data);
+		return data;
+	}
+
+	/**
+	 * Parses binary manifest into a successful result, or throws.
+	 */
+	Result parse(File apk, ByteBuffer data) throws IOException, XmlPullParserException, SAXException {
+		AXmlResourceParser parser = AXmlResourceParserPool.getThreadParser();
+		parser.reset(data);
+		try {
+			if (m_output == Output.XML) {
+				StringBuilder xml = new StringBuilder(4096);
+				AXMLPrinter.print(parser, xml);
+				return new Result(apk, null, xml.toString(), null);
+			}
+			return new Result(apk, AndroidManifestParser.parse(parser), null, null);
+		} finally {
+			parser.close();
+		}
+	}
+
+	/**
+	 * Returns executor for the per-file tasks of a batch.
+	 */
+	ExecutorService newExecutor() {
+		if (m_cpuThreads == 0) {
+			return new ThreadPoolExecutor(m_threads, m_threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+		}
+		try {
+			return (ExecutorService) getVirtualThreadFactory().invoke(null);
+		} catch (Exception e) {
+			throw new UnsupportedOperationException("Cannot create virtual threads.", e);
+		}
+	}
+
+	/**
+	 * Returns Executors.newVirtualThreadPerTaskExecutor(), or null before
+	 * Java 21. Looked up by reflection, so that the code still compiles and
+	 * runs on older versions.
+	 */
+	private static Method getVirtualThreadFactory() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * One extract() call: own pool, and a semaphore that blocks submission
+	 * while all workers are busy and 'maxPending' files are queued.
+	 */
+	private final class Batch {
+
+		Batch(Callback callback) {
+			m_callback = callback;
+			m_executor = newExecutor();
+			m_cpuExecutor = m_cpuThreads == 0 ? null : new ThreadPoolExecutor(m_cpuThreads, m_cpuThreads, 0, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<Runnable>());
+			m_permits = new Semaphore(m_threads + m_maxPending);
+		}
+
+		void submit(final File file) throws InterruptedException {
+			m_permits.acquire();
+			try {
+				m_executor.execute(new Runnable() {
+					public void run() {
+						ApkEntryReader reader = takeReader();
+						try {
+							deliver(m_cpuExecutor == null ? extract(file, reader) : extract(file, reader, m_cpuExecutor));
+						} finally {
+							returnReader(reader);
+							m_permits.release();
+						}
+					}
+				});
+			} catch (RuntimeException e) {
+				m_permits.release();
+				throw e;
+			}
+		}
+
+		/**
+		 * Waits for all submitted files. If interrupted, pending files are
+		 * dropped and running ones interrupted; the pools are shut down either
+		 * way.
+		 */
+		void finish() throws InterruptedException {
+			m_executor.shutdown();
+			try {
+				while (!m_executor.awaitTermination(1, TimeUnit.SECONDS)) {
+				}
+			} catch (InterruptedException e) {
+				m_executor.shutdownNow();
+				throw e;
+			} finally {
+				if (m_cpuExecutor != null) {
+					m_cpuExecutor.shutdown();
+				}
+				closeReaders();
+			}
+			if (m_callbackError != null) {
+				throw m_callbackError;
+			}
+		}
+
+		/**
+		 * Returns an idle reader of the batch, or a new one. There are never
+		 * more readers than workers.
+		 */
+		private ApkEntryReader takeReader() {
+			synchronized (m_readers) {
+				ApkEntryReader reader = m_readers.poll();
+				return reader != null ? reader : new ApkEntryReader();
+			}
+		}
+
+		/**
+		 * Keeps the reader for the next file, or closes it if the batch has
+		 * finished (a worker still running after an interrupt).
+		 */
+		private void returnReader(ApkEntryReader reader) {
+			synchronized (m_readers) {
+				if (!m_readersClosed) {
+					m_readers.push(reader);
+					return;
+				}
+			}
+			reader.close();
+		}
+
+		private void closeReaders() {
+			synchronized (m_readers) {
+				m_readersClosed = true;
+				for (ApkEntryReader reader : m_readers) {
+					reader.close();
+				}
+				m_readers.clear();
+			}
+		}
+
+		private void deliver(Result result) {
+			try {
+				m_callback.onResult(result);
+			} catch (RuntimeException e) {
+				synchronized (this) {
+					if (m_callbackError == null) {
+						m_callbackError = e;
+					}
+				}
+			}
+		}
+
+		private final Callback m_callback;
+		private final ExecutorService m_executor;
+		private final ExecutorService m_cpuExecutor;
+		private final Semaphore m_permits;
+		/*
+		 * Idle readers, so that each worker's Inflater is reused across files
+		 * and released when the batch finishes.
+		 */
+		private final ArrayDeque<ApkEntryReader> m_readers = new ArrayDeque<ApkEntryReader>();
+		private boolean m_readersClosed;
+		private volatile RuntimeException m_callbackError;
+	}
+
+	private final int m_threads;
+	private final int m_maxPending;
+	private final Output m_output;
+	private final int m_cpuThreads;
+}
@@ -0,0 +1,317 @@
+package axmlprinter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads a single entry (usually AndroidManifest.xml) from an APK, without
+ * indexing the whole archive like {@link java.util.zip.ZipFile} does.
+ *
+ * The end of the file is mapped to find the central directory, which is
+ * scanned for the entry name without creating any per-entry objects. Then
+ * only that entry is read: stored entries are returned as a mapped buffer,
+ * deflated ones are inflated into a buffer owned by the reader. The result
+ * can be passed straight to {@link AXmlResourceParser#open(ByteBuffer)}.
+ *
+ * <pre>
+ * ApkEntryReader reader = new ApkEntryReader();
+ * parser.reset(reader.readManifest(apk));
+ * </pre>
+ *
+ * Reader is not thread-safe; it keeps its Inflater and buffers between calls.
+ */
+public final class ApkEntryReader {
+
+	public ApkEntryReader() {
+		m_inflater = new Inflater(true);
+		m_crc = new CRC32();
+		m_input = new byte[8192];
+		m_output = new byte[0];
+	}
+
+	/**
+	 * Reads AndroidManifest.xml of the APK.
+	 *
+	 * @see #read(File, String)
+	 */
+	public ByteBuffer readManifest(File apk) throws IOException {
+		return read(apk, MANIFEST_ENTRY);
+	}
+
+	/**
+	 * Returns content of the named entry. Buffer is only valid until the next
+	 * read() with this reader.
+	 *
+	 * @throws FileNotFoundException
+	 *             if the archive has no such entry.
+	 * @throws ZipException
+	 *             if the archive is malformed or uses an unsupported method.
+	 */
+	public ByteBuffer read(File apk, String name) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(apk, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			return readEntry(channel, findEntry(channel, name, apk), apk);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Returns CRC-32 of the named entry in the low 32 bits, and the low 32
+	 * bits of its uncompressed size in the high ones, as recorded in the
+	 * central directory. The entry itself is not read, so this is a cheap key for
+	 * its content. Needs no reader (nor its Inflater).
+	 *
+	 * @throws FileNotFoundException
+	 *             if the archive has no such entry.
+	 */
+	public static long getChecksum(File apk, String name) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(apk, "r");
+		try {
+			ByteBuffer entry = findEntry(raf.getChannel(), name, apk);
+			long size = entry.getInt(24) & 0xFFFFFFFFL;
+			if (size == 0xFFFFFFFFL) {
+				// the size is the first ZIP64 value
+				size = entry.getLong(findZip64Extra(entry, apk));
+			}
+			return (size << 32) | (entry.getInt(16) & 0xFFFFFFFFL);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Releases the Inflater. Reader must not be used afterwards.
+	 */
+	public void close() {
+		m_inflater.end();
+		m_input = null;
+		m_output = null;
+	}
+
+	// ///////////////////////////////// implementation
+
+	/**
+	 * Returns the central directory record of the named entry, as a buffer
+	 * starting at the record.
+	 */
+	private static ByteBuffer findEntry(FileChannel channel, String name, File apk) throws IOException {
+		byte[] nameBytes = name.getBytes(UTF_8);
+		long size = channel.size();
+
+		// end of central directory record, at the end after an optional comment
+		int tailSize = (int) Math.min(size, EOCD_SIZE + 0xFFFF);
+		ByteBuffer tail = map(channel, size - tailSize, tailSize);
+		int eocd = tailSize - EOCD_SIZE;
+		while (eocd >= 0 && tail.getInt(eocd) != EOCD_SIGNATURE) {
+			--eocd;
+		}
+		if (eocd < 0) {
+			throw new ZipException("End of central directory not found in " + apk + ".");
+		}
+		long directoryOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+		long directorySize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+		if (directoryOffset == 0xFFFFFFFFL || directorySize == 0xFFFFFFFFL) {
+			// ZIP64: the locator, just before the record, points to the real one
+			int locator = eocd - ZIP64_LOCATOR_SIZE;
+			if (locator < 0 || tail.getInt(locator) != ZIP64_LOCATOR_SIGNATURE) {
+				throw new ZipException("ZIP64 locator not found in " + apk + ".");
+			}
+			ByteBuffer zip64 = map(channel, tail.getLong(locator + 8), ZIP64_EOCD_SIZE);
+			if (zip64.getInt(0) != ZIP64_EOCD_SIGNATURE) {
+				throw new ZipException("ZIP64 end of central directory not found in " + apk + ".");
+			}
+			directorySize = zip64.getLong(40);
+			directoryOffset = zip64.getLong(48);
+		}
+		if (directoryOffset + directorySize > size || directorySize > Integer.MAX_VALUE) {
+			throw new ZipException("Invalid central directory in " + apk + ".");
+		}
+
+		ByteBuffer directory = map(channel, directoryOffset, (int) directorySize);
+		int entry = findEntry(directory, nameBytes);
+		if (entry == -1) {
+			throw new FileNotFoundException(name + " not found in " + apk);
+		}
+		directory.position(entry);
+		return directory.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Returns offset of the directory record with the given name, or -1.
+	 */
+	private static int findEntry(ByteBuffer directory, byte[] name) throws ZipException {
+		int limit = directory.limit();
+		int offset = 0;
+		while (offset + CENTRAL_HEADER_SIZE <= limit) {
+			if (directory.getInt(offset) != CENTRAL_HEADER_SIGNATURE) {
+				throw new ZipException("Invalid central directory entry at " + offset + ".");
+			}
+			int nameLength = directory.getShort(offset + 28) & 0xFFFF;
+			int extraLength = directory.getShort(offset + 30) & 0xFFFF;
+			int commentLength = directory.getShort(offset + 32) & 0xFFFF;
+			if (nameLength == name.length && offset + CENTRAL_HEADER_SIZE + nameLength <= limit) {
+				int i = 0;
+				while (i != nameLength && directory.get(offset + CENTRAL_HEADER_SIZE + i) == name[i]) {
+					++i;
+				}
+				if (i == nameLength) {
+					return offset;
+				}
+			}
+			offset += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+		}
+		return -1;
+	}
+
+	private ByteBuffer readEntry(FileChannel channel, ByteBuffer entry, File apk) throws IOException {
+		int method = entry.getShort(10) & 0xFFFF;
+		int crc = entry.getInt(16);
+		long compressedSize = entry.getInt(20) & 0xFFFFFFFFL;
+		long size = entry.getInt(24) & 0xFFFFFFFFL;
+		long localOffset = entry.getInt(42) & 0xFFFFFFFFL;
+		if (size == 0xFFFFFFFFL || compressedSize == 0xFFFFFFFFL || localOffset == 0xFFFFFFFFL) {
+			// ZIP64 extended information: present values, in this order
+			int field = findZip64Extra(entry, apk);
+			if (size == 0xFFFFFFFFL) {
+				size = entry.getLong(field);
+				field += 8;
+			}
+			if (compressedSize == 0xFFFFFFFFL) {
+				compressedSize = entry.getLong(field);
+				field += 8;
+			}
+			if (localOffset == 0xFFFFFFFFL) {
+				localOffset = entry.getLong(field);
+			}
+		}
+		if (size > Integer.MAX_VALUE || compressedSize > Integer.MAX_VALUE) {
+			throw new ZipException("Entry is too large (" + size + " bytes) in " + apk + ".");
+		}
+
+		ByteBuffer header = map(channel, localOffset, LOCAL_HEADER_SIZE);
+		if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+			throw new ZipException("Invalid local header at " + localOffset + " in " + apk + ".");
+		}
+		long dataOffset = localOffset + LOCAL_HEADER_SIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+		if (dataOffset + compressedSize > channel.size()) {
+			throw new ZipException("Entry data is truncated in " + apk + ".");
+		}
+		ByteBuffer data = map(channel, dataOffset, (int) compressedSize);
+
+		ByteBuffer result;
+		if (method == METHOD_STORED) {
+			if (compressedSize != size) {
+				throw new ZipException("Invalid size of stored entry in " + apk + ".");
+			}
+			result = data;
+		} else if (method == METHOD_DEFLATED) {
+			result = inflate(data, (int) size, apk);
+		} else {
+			throw new ZipException("Unsupported compression method " + method + " in " + apk + ".");
+		}
+		checkCrc(result, crc, apk);
+		return result;
+	}
+
+	/**
+	 * Returns offset of the values in the ZIP64 extra field of the directory
+	 * record.
+	 */
+	private static int findZip64Extra(ByteBuffer entry, File apk) throws ZipException {
+		int nameLength = entry.getShort(28) & 0xFFFF;
+		int extra = CENTRAL_HEADER_SIZE + nameLength;
+		int extraEnd = extra + (entry.getShort(30) & 0xFFFF);
+		while (extra + 4 <= extraEnd && entry.getShort(extra) != ZIP64_EXTRA_ID) {
+			extra += 4 + (entry.getShort(extra + 2) & 0xFFFF);
+		}
+		if (extra + 4 > extraEnd) {
+			throw new ZipException("ZIP64 extra field not found for entry in " + apk + ".");
+		}
+		return extra + 4;
+	}
+
+	private ByteBuffer inflate(ByteBuffer data, int size, File apk) throws ZipException {
+		int compressedSize = data.remaining();
+		if (m_input.length < compressedSize) {
+			m_input = new byte[compressedSize];
+		}
+		if (m_output.length < size) {
+			m_output = new byte[size];
+		}
+		data.get(m_input, 0, compressedSize);
+		m_inflater.reset();
+		m_inflater.setInput(m_input, 0, compressedSize);
+		try {
+			int length = 0;
+			while (length < size) {
+				int read = m_inflater.inflate(m_output, length, size - length);
+				if (read == 0 && (m_inflater.finished() || m_inflater.needsInput() || m_inflater.needsDictionary())) {
+					break;
+				}
+				length += read;
+			}
+			if (length != size) {
+				throw new ZipException("Inflated " + length + " bytes instead of " + size + " in " + apk + ".");
+			}
+		} catch (DataFormatException e) {
+			ZipException exception = new ZipException("Invalid deflated data in " + apk + ".");
+			exception.initCause(e);
+			throw exception;
+		}
+		return ByteBuffer.wrap(m_output, 0, size).slice();
+	}
+
+	private void checkCrc(ByteBuffer content, int crc, File apk) throws ZipException {
+		m_crc.reset();
+		if (content.hasArray()) {
+			m_crc.update(content.array(), content.arrayOffset() + content.position(), content.remaining());
+		} else {
+			ByteBuffer copy = content.duplicate();
+			while (copy.hasRemaining()) {
+				int length = Math.min(m_input.length, copy.remaining());
+				copy.get(m_input, 0, length);
+				m_crc.update(m_input, 0, length);
+			}
+		}
+		if ((int) m_crc.getValue() != crc) {
+			throw new ZipException("CRC mismatch in " + apk + ".");
+		}
+	}
+
+	private static ByteBuffer map(FileChannel channel, long offset, int size) throws IOException {
+		if (offset < 0 || offset + size > channel.size()) {
+			throw new ZipException("Offset " + offset + " is out of the file.");
+		}
+		ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+
+	private final Inflater m_inflater;
+	private final CRC32 m_crc;
+	private byte[] m_input;
+	private byte[] m_output;
+
+	static final String MANIFEST_ENTRY = "AndroidManifest.xml";
+
+	private static final int EOCD_SIGNATURE = 0x06054b50, EOCD_SIZE = 22, ZIP64_LOCATOR_SIGNATURE = 0x07064b50, ZIP64_LOCATOR_SIZE = 20,
+			ZIP64_EOCD_SIGNATURE = 0x06064b50, ZIP64_EOCD_SIZE = 56, CENTRAL_HEADER_SIGNATURE = 0x02014b50, CENTRAL_HEADER_SIZE = 46,
+			LOCAL_HEADER_SIGNATURE = 0x04034b50, LOCAL_HEADER_SIZE = 30;
+
+	private static final short ZIP64_EXTRA_ID = 0x0001;
+
+	private static final int METHOD_STORED = 0, METHOD_DEFLATED = 8;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+}
@@ -0,0 +1,230 @@
+package axmlprinter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Framework attribute names by resource ID, read from the compact binary
+ * table written by {@link AttributeTableGenerator}. Unlike {@link R_Default},
+ * the table can cover every API level the generator was given.
+ *
+ * Table format (big-endian):
+ *
+ * <pre>
+ * int    magic ('ATTR'), version, count, size of name data
+ * int    ids[count]            sorted ascending
+ * int    offsets[count + 1]    start of each name in the name data
+ * byte   names[]               UTF-8, concatenated
+ * </pre>
+ *
+ * The table is used in place: loaded from a file it is mapped, and names are
+ * only decoded when looked up. Offsets are checked when the table is opened.
+ */
+public final class AttributeTable {
+
+	/**
+	 * Wraps table data. Buffer is not copied and must not change.
+	 */
+	public AttributeTable(ByteBuffer buffer) throws IOException {
+		ByteBuffer data = buffer.slice();
+		if (data.remaining() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+			throw new IOException("Not an attribute table.");
+		}
+		if (data.getInt(4) != VERSION) {
+			throw new IOException("Unsupported attribute table version (" + data.getInt(4) + ").");
+		}
+		int count = data.getInt(8);
+		int namesSize = data.getInt(12);
+		if (count < 0 || namesSize < 0 || (long) HEADER_SIZE + (2L * count + 1) * 4 + namesSize > data.remaining()) {
+			throw new IOException("Attribute table is truncated (count=" + count + ", names=" + namesSize + ").");
+		}
+		m_count = count;
+		m_data = data;
+		m_offsetsStart = HEADER_SIZE + count * 4;
+		m_namesStart = m_offsetsStart + (count + 1) * 4;
+		m_names = new String[count];
+		// checked once here, so that lookups can't fail
+		int previous = 0;
+		for (int i = 0; i <= count; ++i) {
+			int offset = data.getInt(m_offsetsStart + i * 4);
+			if (offset < previous || offset > namesSize) {
+				throw new IOException("Invalid name offset " + offset + " at " + i + ".");
+			}
+			previous = offset;
+		}
+	}
+
+	/**
+	 * Maps table from the file.
+	 */
+	public static AttributeTable load(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			// mapping stays valid after the file is closed
+			return new AttributeTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Reads table from the stream (for tables that are not plain files, e.g.
+	 * class path resources).
+	 */
+	public static AttributeTable load(InputStream stream) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 * 1024);
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = stream.read(buffer)) != -1) {
+			bytes.write(buffer, 0, read);
+		}
+		return new AttributeTable(ByteBuffer.wrap(bytes.toByteArray()));
+	}
+
+	/**
+	 * Writes table with the given attributes. Ids don't have to be sorted; if
+	 * an id is given twice, the first name is kept.
+	 */
+	public static void write(int[] ids, String[] names, OutputStream stream) throws IOException {
+		if (ids.length != names.length) {
+			throw new IllegalArgumentException("Got " + ids.length + " ids, but " + names.length + " names.");
+		}
+		long[] keys = new long[ids.length];
+		for (int i = 0; i != ids.length; ++i) {
+			// sort by id, then by position
+			keys[i] = ((long) ids[i] << 32) | i;
+		}
+		Arrays.sort(keys);
+
+		int[] sortedIds = new int[ids.length];
+		int[] offsets = new int[ids.length + 1];
+		ByteArrayOutputStream nameData = new ByteArrayOutputStream(ids.length * 16);
+		int count = 0;
+		for (int i = 0; i != keys.length; ++i) {
+			int id = (int) (keys[i] >> 32);
+			if (count != 0 && sortedIds[count - 1] == id) {
+				continue;
+			}
+			byte[] name = names[(int) keys[i]].getBytes(UTF_8);
+			sortedIds[count] = id;
+			offsets[count] = nameData.size();
+			nameData.write(name, 0, name.length);
+			count++;
+		}
+		offsets[count] = nameData.size();
+
+		DataOutputStream out = new DataOutputStream(stream);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(count);
+		out.writeInt(nameData.size());
+		for (int i = 0; i != count; ++i) {
+			out.writeInt(sortedIds[i]);
+		}
+		for (int i = 0; i <= count; ++i) {
+			out.writeInt(offsets[i]);
+		}
+		nameData.writeTo(out);
+		out.flush();
+	}
+
+	/**
+	 * Returns the table named by the "axmlprinter.attributes" system property,
+	 * or else the "attributes.bin" resource next to this class, or null if
+	 * there is neither. Loaded once.
+	 */
+	public static AttributeTable getDefault() {
+		return DefaultHolder.TABLE;
+	}
+
+	/**
+	 * Returns number of attributes in the table.
+	 */
+	public int getCount() {
+		return m_count;
+	}
+
+	/**
+	 * Returns name of the attribute with the given resource ID, or null if the
+	 * table does not have it.
+	 */
+	public String getName(int id) {
+		int low = 0;
+		int high = m_count - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int value = m_data.getInt(HEADER_SIZE + middle * 4);
+			if (value < id) {
+				low = middle + 1;
+			} else if (value > id) {
+				high = middle - 1;
+			} else {
+				return getNameAt(middle);
+			}
+		}
+		return null;
+	}
+
+	// ///////////////////////////////// implementation
+
+	private String getNameAt(int index) {
+		String name = m_names[index];
+		if (name == null) {
+			int start = m_data.getInt(m_offsetsStart + index * 4);
+			int end = m_data.getInt(m_offsetsStart + index * 4 + 4);
+			byte[] bytes = new byte[end - start];
+			ByteBuffer names = m_data.duplicate();
+			names.position(m_namesStart + start);
+			names.get(bytes);
+			name = new String(bytes, UTF_8);
+			// racing threads decode the same string, which is harmless
+			m_names[index] = name;
+		}
+		return name;
+	}
+
+	private static final class DefaultHolder {
+		static final AttributeTable TABLE = loadDefault();
+
+		private static AttributeTable loadDefault() {
+			try {
+				String path = System.getProperty(PROPERTY);
+				if (path != null) {
+					return load(new File(path));
+				}
+				InputStream stream = AttributeTable.class.getResourceAsStream(RESOURCE);
+				if (stream != null) {
+					try {
+						return load(stream);
+					} finally {
+						stream.close();
+					}
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return null;
+		}
+	}
+
+	private final ByteBuffer m_data;
+	private final int m_count;
+	private final int m_offsetsStart;
+	private final int m_namesStart;
+	private final String[] m_names;
+
+	private static final int MAGIC = 0x41545452, VERSION = 1, HEADER_SIZE = 16;
+
+	private static final String PROPERTY = "axmlprinter.attributes", RESOURCE = "attributes.bin";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+}
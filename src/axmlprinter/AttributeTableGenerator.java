@@ -0,0 +1,116 @@
+package axmlprinter;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Generates an {@link AttributeTable} from the framework's public attributes,
+ * read either from a platform public.xml or from the android.R$attr class of
+ * an android.jar.
+ *
+ * <pre>
+ * java axmlprinter.AttributeTableGenerator &lt;public.xml|android.jar&gt; &lt;output&gt;
+ * </pre>
+ *
+ * The output can be put on the class path as axmlprinter/attributes.bin, or
+ * named by the "axmlprinter.attributes" system property.
+ * <p/>
+ * The checked-in src/axmlprinter/attributes.bin was generated from
+ * Robolectric's Android 17 framework jar, which has the same android.R$attr
+ * (org.robolectric:android-all:17-robolectric-15733970 on Maven Central).
+ * Regenerate it the same way when a new platform adds attributes:
+ *
+ * <pre>
+ * java axmlprinter.AttributeTableGenerator android-all.jar src/axmlprinter/attributes.bin
+ * </pre>
+ */
+public class AttributeTableGenerator {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 2) {
+			System.err.println("Usage: AttributeTableGenerator <public.xml|android.jar> <output>");
+			System.exit(1);
+		}
+		File input = new File(args[0]);
+		List<Integer> ids = new ArrayList<Integer>();
+		List<String> names = new ArrayList<String>();
+		if (input.getName().endsWith(".xml")) {
+			readPublicXml(input, ids, names);
+		} else {
+			readAndroidJar(input, ids, names);
+		}
+
+		int[] idArray = new int[ids.size()];
+		for (int i = 0; i != idArray.length; ++i) {
+			idArray[i] = ids.get(i);
+		}
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(args[1]));
+		try {
+			AttributeTable.write(idArray, names.toArray(new String[names.size()]), out);
+		} finally {
+			out.close();
+		}
+		System.out.println("Wrote " + idArray.length + " attributes to " + args[1]);
+	}
+
+	/**
+	 * Reads &lt;public type="attr" name=".." id=".."/&gt; entries.
+	 */
+	public static void readPublicXml(File file, final List<Integer> ids, final List<String> names) throws IOException, SAXException {
+		try {
+			SAXParserFactory.newInstance().newSAXParser().parse(file, new DefaultHandler() {
+				@Override
+				public void startElement(String uri, String localName, String qName, Attributes attributes) {
+					if ("public".equals(qName) && "attr".equals(attributes.getValue("type"))) {
+						String name = attributes.getValue("name");
+						String id = attributes.getValue("id");
+						if (name != null && id != null) {
+							ids.add((int) Long.decode(id).longValue());
+							names.add(name);
+						}
+					}
+				}
+			});
+		} catch (ParserConfigurationException e) {
+			throw new SAXException(e);
+		}
+	}
+
+	/**
+	 * Reads the int constants of android.R$attr.
+	 */
+	public static void readAndroidJar(File file, List<Integer> ids, List<String> names) throws IOException, ClassNotFoundException {
+		// no parent, so that android.* is only looked up in the jar
+		URLClassLoader loader = new URLClassLoader(new URL[] { file.toURI().toURL() }, null);
+		try {
+			Class<?> attr = Class.forName("android.R$attr", false, loader);
+			for (Field field : attr.getFields()) {
+				if (int.class.equals(field.getType()) && Modifier.isStatic(field.getModifiers())) {
+					try {
+						ids.add(field.getInt(null));
+						names.add(field.getName());
+					} catch (IllegalAccessException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		} finally {
+			loader.close();
+		}
+	}
+}
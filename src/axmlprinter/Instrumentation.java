@@ -5,6 +5,7 @@ import java.io.Serializable;
  * Instrumentation info obtained from manifest
  */
 public class Instrumentation implements Serializable {
+	private static final long serialVersionUID = 3505698863030044713L;
 	private final String mName;
 	private final String mTargetPackage;
 
@@ -18,13 +18,24 @@ package axmlprinter;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 
 /**
  * @author Dmitry Skiba
  * 
  *         Simple helper class that allows reading of integers.
  * 
- *         TODO: * implement buffering
+ *         Stream data is read in blocks into a heap ByteBuffer, so that ints
+ *         and int arrays are decoded with ByteBuffer.getInt() and bulk
+ *         IntBuffer.get() instead of one InputStream.read() per byte.
+ *         getPosition() reports bytes consumed by the caller, not bytes read
+ *         ahead from the stream.
+ * 
+ *         Reader can also be reset to an in-memory ByteBuffer (e.g. a
+ *         MappedByteBuffer). In that case readBuffer() and readIntBuffer()
+ *         return views of that buffer instead of copies.
  * 
  */
 public final class IntReader {
@@ -36,23 +47,60 @@ public final class IntReader {
 		reset(stream, bigEndian);
 	}
 
+	public IntReader(ByteBuffer buffer, boolean bigEndian) {
+		reset(buffer, bigEndian);
+	}
+
 	public final void reset(InputStream stream, boolean bigEndian) {
 		m_stream = stream;
 		m_bigEndian = bigEndian;
 		m_position = 0;
+		if (m_streamBuffer == null && stream != null) {
+			m_streamBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+		}
+		m_buffer = m_streamBuffer;
+		if (m_buffer != null) {
+			m_buffer.clear();
+			m_buffer.limit(0);
+			updateOrder();
+		} else {
+			m_intBuffer = null;
+			m_intBufferSource = null;
+		}
 	}
 
-	public final void close() {
-		if (m_stream == null) {
+	/**
+	 * Resets reader to read from the remaining bytes of the buffer. Buffer's
+	 * position is not modified.
+	 */
+	public final void reset(ByteBuffer buffer, boolean bigEndian) {
+		if (buffer == null) {
+			reset((InputStream) null, bigEndian);
 			return;
 		}
-		try {
-			m_stream.close();
-		} catch (IOException e) {
+		m_stream = null;
+		m_bigEndian = bigEndian;
+		m_position = 0;
+		m_buffer = buffer.slice();
+		updateOrder();
+	}
+
+	public final void close() {
+		if (m_stream != null) {
+			try {
+				m_stream.close();
+			} catch (IOException e) {
+			}
+		} else if (!isWrapping()) {
+			return;
 		}
-		reset(null, false);
+		reset((InputStream) null, false);
 	}
 
+	/**
+	 * Returns underlying stream. Note that the reader may have already read
+	 * ahead from it.
+	 */
 	public final InputStream getStream() {
 		return m_stream;
 	}
@@ -63,6 +111,9 @@ public final class IntReader {
 
 	public final void setBigEndian(boolean bigEndian) {
 		m_bigEndian = bigEndian;
+		if (m_buffer != null) {
+			updateOrder();
+		}
 	}
 
 	public final int readByte() throws IOException {
@@ -81,25 +132,34 @@ public final class IntReader {
 		if (length < 0 || length > 4) {
 			throw new IllegalArgumentException();
 		}
+		if (remaining() < length && !fill(length)) {
+			int available = remaining();
+			m_position += available;
+			if (available != 0) {
+				m_buffer.position(m_buffer.limit());
+			}
+			throw new EOFException();
+		}
+		m_position += length;
+		switch (length) {
+		case 4:
+			return m_buffer.getInt();
+		case 2:
+			return (m_buffer.getShort() & 0xFFFF);
+		case 1:
+			return (m_buffer.get() & 0xFF);
+		case 0:
+			return 0;
+		}
 		int result = 0;
 		if (m_bigEndian) {
 			for (int i = (length - 1) * 8; i >= 0; i -= 8) {
-				int b = m_stream.read();
-				if (b == -1) {
-					throw new EOFException();
-				}
-				m_position += 1;
-				result |= (b << i);
+				result |= ((m_buffer.get() & 0xFF) << i);
 			}
 		} else {
 			length *= 8;
 			for (int i = 0; i != length; i += 8) {
-				int b = m_stream.read();
-				if (b == -1) {
-					throw new EOFException();
-				}
-				m_position += 1;
-				result |= (b << i);
+				result |= ((m_buffer.get() & 0xFF) << i);
 			}
 		}
 		return result;
@@ -112,26 +172,129 @@ public final class IntReader {
 	}
 
 	public final void readIntArray(int[] array, int offset, int length) throws IOException {
-		for (; length > 0; length -= 1) {
-			array[offset++] = readInt();
+		while (length > 0) {
+			int count = remaining() / 4;
+			if (count == 0) {
+				// Refills the buffer or throws EOFException.
+				array[offset++] = readInt();
+				length -= 1;
+				continue;
+			}
+			if (count > length) {
+				count = length;
+			}
+			int position = m_buffer.position();
+			if ((position & 3) == 0) {
+				m_intBuffer.position(position >> 2);
+				m_intBuffer.get(array, offset, count);
+			} else {
+				for (int i = 0; i != count; ++i) {
+					array[offset + i] = m_buffer.getInt(position + i * 4);
+				}
+			}
+			m_buffer.position(position + count * 4);
+			m_position += count * 4;
+			offset += count;
+			length -= count;
 		}
 	}
 
+	/**
+	 * Returns next 'length' bytes as a buffer with reader's byte order. If
+	 * reader reads from a ByteBuffer, returned buffer is a view of it,
+	 * otherwise bytes are copied.
+	 */
+	public final ByteBuffer readBuffer(int length) throws IOException {
+		return readBuffer(length, null);
+	}
+
+	/**
+	 * Same as readBuffer(int), but when bytes have to be copied and 'reuse'
+	 * is a large enough array-backed buffer, they are copied into it.
+	 */
+	public final ByteBuffer readBuffer(int length, ByteBuffer reuse) throws IOException {
+		ByteBuffer result;
+		if (isWrapping()) {
+			if (length > m_buffer.remaining()) {
+				// Throws EOFException.
+				skip(length);
+			}
+			result = m_buffer.slice();
+			result.limit(length);
+			m_buffer.position(m_buffer.position() + length);
+			m_position += length;
+		} else if (reuse != null && reuse.hasArray() && reuse.capacity() >= length) {
+			readByteArray(reuse.array(), reuse.arrayOffset(), length);
+			result = reuse;
+			result.clear();
+			result.limit(length);
+		} else {
+			result = ByteBuffer.wrap(readByteArray(length));
+		}
+		result.order(m_bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		return result;
+	}
+
+	/**
+	 * Same as readIntArray(), but returns a view of the underlying ByteBuffer
+	 * if there is one.
+	 */
+	public final IntBuffer readIntBuffer(int length) throws IOException {
+		return readIntBuffer(length, null);
+	}
+
+	/**
+	 * Same as readIntBuffer(int), but when ints have to be copied and 'reuse'
+	 * is a large enough array-backed buffer, they are copied into it.
+	 */
+	public final IntBuffer readIntBuffer(int length, IntBuffer reuse) throws IOException {
+		if (isWrapping()) {
+			return readBuffer(length * 4).asIntBuffer();
+		}
+		if (reuse != null && reuse.hasArray() && reuse.capacity() >= length) {
+			readIntArray(reuse.array(), reuse.arrayOffset(), length);
+			reuse.clear();
+			reuse.limit(length);
+			return reuse;
+		}
+		return IntBuffer.wrap(readIntArray(length));
+	}
+
 	public final byte[] readByteArray(int length) throws IOException {
 		byte[] array = new byte[length];
-		int read = m_stream.read(array);
+		readByteArray(array, 0, length);
+		return array;
+	}
+
+	public final void readByteArray(byte[] array, int offset, int length) throws IOException {
+		int read = Math.min(remaining(), length);
+		if (read != 0) {
+			m_buffer.get(array, offset, read);
+		}
+		while (read != length && m_stream != null) {
+			int count = m_stream.read(array, offset + read, length - read);
+			if (count == -1) {
+				break;
+			}
+			read += count;
+		}
 		m_position += read;
 		if (read != length) {
 			throw new EOFException();
 		}
-		return array;
 	}
 
 	public final void skip(int bytes) throws IOException {
 		if (bytes <= 0) {
 			return;
 		}
-		long skipped = m_stream.skip(bytes);
+		long skipped = Math.min(remaining(), bytes);
+		if (skipped != 0) {
+			m_buffer.position(m_buffer.position() + (int) skipped);
+		}
+		if (skipped != bytes && m_stream != null) {
+			skipped += m_stream.skip(bytes - skipped);
+		}
 		m_position += skipped;
 		if (skipped != bytes) {
 			throw new EOFException();
@@ -143,16 +306,71 @@ public final class IntReader {
 	}
 
 	public final int available() throws IOException {
-		return m_stream.available();
+		return remaining() + (m_stream != null ? m_stream.available() : 0);
 	}
 
 	public final int getPosition() {
 		return m_position;
 	}
 
+	// ///////////////////////////////// implementation
+
+	/**
+	 * Applies byte order to the buffer and makes sure m_intBuffer is an int
+	 * view of the whole buffer with the same order.
+	 */
+	private final void updateOrder() {
+		ByteOrder order = (m_bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		m_buffer.order(order);
+		if (m_intBuffer == null || m_intBufferSource != m_buffer || m_intBuffer.order() != order) {
+			ByteBuffer whole = m_buffer.duplicate();
+			whole.clear();
+			whole.order(order);
+			m_intBuffer = whole.asIntBuffer();
+			m_intBufferSource = m_buffer;
+		}
+	}
+
+	private final boolean isWrapping() {
+		return (m_buffer != null && m_buffer != m_streamBuffer);
+	}
+
+	private final int remaining() {
+		return (m_buffer != null) ? m_buffer.remaining() : 0;
+	}
+
+	/**
+	 * Reads from the stream until at least 'length' bytes are buffered.
+	 * Returns false if the stream ended before that.
+	 */
+	private final boolean fill(int length) throws IOException {
+		if (m_stream == null) {
+			return false;
+		}
+		m_buffer.compact();
+		try {
+			while (m_buffer.position() < length) {
+				int read = m_stream.read(m_buffer.array(), m_buffer.arrayOffset() + m_buffer.position(), m_buffer.remaining());
+				if (read == -1) {
+					return false;
+				}
+				m_buffer.position(m_buffer.position() + read);
+			}
+			return true;
+		} finally {
+			m_buffer.flip();
+		}
+	}
+
 	// ///////////////////////////////// data
 
 	private InputStream m_stream;
 	private boolean m_bigEndian;
 	private int m_position;
+	private ByteBuffer m_buffer;
+	private ByteBuffer m_streamBuffer;
+	private IntBuffer m_intBuffer;
+	private ByteBuffer m_intBufferSource;
+
+	private static final int BUFFER_SIZE = 16384;
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 public final class IntentFilter implements Serializable {
+	private static final long serialVersionUID = 5890113948160537416L;
 	private final List<String> mActions = new ArrayList<String>();
 	private final List<String> mCategories = new ArrayList<String>();
 	private final List<String> mDatas = new ArrayList<String>();
@@ -0,0 +1,350 @@
+package axmlprinter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.xml.sax.SAXException;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Disk cache of parsed manifests, for jobs that process the same APKs again
+ * and again.
+ *
+ * <pre>
+ * ManifestCache cache = new ManifestCache(new File("cache"), 512 * 1024 * 1024);
+ * ManifestData manifest = cache.getManifest(apk);
+ * </pre>
+ *
+ * APKs are keyed by the CRC-32 and size of AndroidManifest.xml, taken from
+ * the central directory, so a hit doesn't even inflate the manifest. Raw
+ * manifests passed to {@link #parseBinary(byte[])} are keyed by their SHA-1.
+ * <p/>
+ * Entries are written to a temporary file, synced and then renamed, so a
+ * crash never leaves a partial entry behind. When the cache grows over its
+ * size limit, the least recently used entries are deleted; access times are
+ * kept in the files' modification times, so the order survives restarts.
+ * Unreadable entries are treated as misses.
+ * <p/>
+ * Cache is thread-safe. The directory should not be shared by processes
+ * running at the same time, as each keeps its own index of the entries.
+ */
+public final class ManifestCache {
+
+	/**
+	 * Opens cache in the directory (created if needed), limited to 'maxBytes'
+	 * bytes of entries.
+	 */
+	public ManifestCache(File directory, long maxBytes) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create cache directory " + directory + ".");
+		}
+		m_directory = directory;
+		m_maxBytes = maxBytes;
+
+		File[] files = directory.listFiles();
+		if (files == null) {
+			throw new IOException("Cannot list cache directory " + directory + ".");
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File a, File b) {
+				long difference = a.lastModified() - b.lastModified();
+				return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+			}
+		});
+		synchronized (m_entries) {
+			for (File file : files) {
+				String name = file.getName();
+				if (name.endsWith(TEMP_SUFFIX)) {
+					// left over by a crash
+					file.delete();
+				} else if (name.endsWith(MANIFEST_SUFFIX) || name.endsWith(XML_SUFFIX)) {
+					m_entries.put(name, file.length());
+					m_size += file.length();
+				}
+			}
+			trim();
+		}
+	}
+
+	/**
+	 * Returns the APK's manifest, from the cache if possible.
+	 *
+	 * @see AndroidManifestParser#parse(AXmlResourceParser)
+	 */
+	public ManifestData getManifest(File apk) throws IOException, SAXException {
+		String name = getKey(apk) + MANIFEST_SUFFIX;
+		ManifestData manifest = readManifest(name);
+		if (!count(manifest != null)) {
+			manifest = parse(ApkBatchExtractor.readManifest(apk));
+			writeManifest(name, manifest);
+		}
+		return manifest;
+	}
+
+	/**
+	 * Returns the APK's manifest as text, from the cache if possible.
+	 *
+	 * @see AXMLPrinter#getManifestXMLFromAPK(File)
+	 */
+	public String getManifestXML(File apk) throws IOException, XmlPullParserException {
+		String name = getKey(apk) + XML_SUFFIX;
+		byte[] data = read(name);
+		if (count(data != null)) {
+			return new String(data, UTF_8);
+		}
+		byte[] manifest = ApkBatchExtractor.readManifest(apk);
+		AXmlResourceParser parser = AXmlResourceParserPool.getThreadParser();
+		parser.reset(manifest, 0, manifest.length);
+		StringBuilder xml = new StringBuilder(4096);
+		try {
+			AXMLPrinter.print(parser, xml);
+		} finally {
+			parser.close();
+		}
+		String result = xml.toString();
+		write(name, result.getBytes(UTF_8));
+		return result;
+	}
+
+	/**
+	 * Returns the manifest parsed from binary xml, from the cache if the same
+	 * bytes were parsed before.
+	 *
+	 * @see AndroidManifestParser#parseBinary(InputStream)
+	 */
+	public ManifestData parseBinary(byte[] manifest) throws IOException, SAXException {
+		String name = getKey(manifest) + MANIFEST_SUFFIX;
+		ManifestData result = readManifest(name);
+		if (!count(result != null)) {
+			result = parse(manifest);
+			writeManifest(name, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns total size of the entries, in bytes.
+	 */
+	public long getSize() {
+		synchronized (m_entries) {
+			return m_size;
+		}
+	}
+
+	public long getHitCount() {
+		synchronized (m_entries) {
+			return m_hits;
+		}
+	}
+
+	public long getMissCount() {
+		synchronized (m_entries) {
+			return m_misses;
+		}
+	}
+
+	/**
+	 * Deletes all entries.
+	 */
+	public void clear() {
+		synchronized (m_entries) {
+			for (String name : m_entries.keySet()) {
+				new File(m_directory, name).delete();
+			}
+			m_entries.clear();
+			m_size = 0;
+		}
+	}
+
+	// ///////////////////////////////// implementation
+
+	private static ManifestData parse(byte[] manifest) throws IOException, SAXException {
+		AXmlResourceParser parser = AXmlResourceParserPool.getThreadParser();
+		parser.reset(manifest, 0, manifest.length);
+		try {
+			return AndroidManifestParser.parse(parser);
+		} finally {
+			parser.close();
+		}
+	}
+
+	private boolean count(boolean hit) {
+		synchronized (m_entries) {
+			if (hit) {
+				++m_hits;
+			} else {
+				++m_misses;
+			}
+		}
+		return hit;
+	}
+
+	private ManifestData readManifest(String name) {
+		byte[] data = read(name);
+		if (data == null) {
+			return null;
+		}
+		try {
+			return ManifestDataReader.decode(data);
+		} catch (Exception e) {
+			// written by an incompatible version, or damaged
+			remove(name);
+			return null;
+		}
+	}
+
+	private void writeManifest(String name, ManifestData manifest) {
+		byte[] data;
+		try {
+			data = ManifestDataWriter.encode(manifest);
+		} catch (IOException e) {
+			// over the limits of the format, so just not cached
+			return;
+		}
+		write(name, data);
+	}
+
+	/**
+	 * Returns content of the entry, or null if there is none.
+	 */
+	private byte[] read(String name) {
+		synchronized (m_entries) {
+			// get() also makes the entry the most recently used
+			if (m_entries.get(name) == null) {
+				return null;
+			}
+		}
+		File file = new File(m_directory, name);
+		try {
+			InputStream in = new FileInputStream(file);
+			try {
+				byte[] data = new byte[(int) file.length()];
+				int length = 0;
+				while (length != data.length) {
+					int read = in.read(data, length, data.length - length);
+					if (read == -1) {
+						throw new IOException("Cache entry " + file + " is truncated.");
+					}
+					length += read;
+				}
+				file.setLastModified(System.currentTimeMillis());
+				return data;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			remove(name);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the entry through a temporary file. Failures are ignored, the
+	 * entry is then just not cached.
+	 */
+	private void write(String name, byte[] data) {
+		File file = new File(m_directory, name);
+		File temp = null;
+		try {
+			temp = File.createTempFile("entry", TEMP_SUFFIX, m_directory);
+			FileOutputStream out = new FileOutputStream(temp);
+			try {
+				out.write(data);
+				out.getFD().sync();
+			} finally {
+				out.close();
+			}
+			// renameTo() doesn't replace existing files on all platforms
+			if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+				temp.delete();
+				return;
+			}
+		} catch (IOException e) {
+			if (temp != null) {
+				temp.delete();
+			}
+			return;
+		}
+		synchronized (m_entries) {
+			Long previous = m_entries.put(name, (long) data.length);
+			m_size += data.length - (previous != null ? previous : 0);
+			trim();
+		}
+	}
+
+	private void remove(String name) {
+		synchronized (m_entries) {
+			Long size = m_entries.remove(name);
+			if (size != null) {
+				m_size -= size;
+				new File(m_directory, name).delete();
+			}
+		}
+	}
+
+	/**
+	 * Deletes least recently used entries until the cache fits its limit.
+	 * Called with m_entries locked.
+	 */
+	private void trim() {
+		Iterator<Map.Entry<String, Long>> entries = m_entries.entrySet().iterator();
+		while (m_size > m_maxBytes && entries.hasNext()) {
+			Map.Entry<String, Long> entry = entries.next();
+			new File(m_directory, entry.getKey()).delete();
+			m_size -= entry.getValue();
+			entries.remove();
+		}
+	}
+
+	private static String getKey(File apk) throws IOException {
+		return "c" + toHex(ApkEntryReader.getChecksum(apk, ApkEntryReader.MANIFEST_ENTRY), 16);
+	}
+
+	private static String getKey(byte[] manifest) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			// every platform has SHA-1
+			throw new IllegalStateException(e);
+		}
+		StringBuilder key = new StringBuilder(41).append('h');
+		for (byte b : digest.digest(manifest)) {
+			key.append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+		}
+		return key.toString();
+	}
+
+	private static String toHex(long value, int digits) {
+		char[] hex = new char[digits];
+		for (int i = digits - 1; i >= 0; --i) {
+			hex[i] = HEX_DIGITS[(int) value & 0xF];
+			value >>>= 4;
+		}
+		return new String(hex);
+	}
+
+	private final File m_directory;
+	private final long m_maxBytes;
+	/* Entry file names to sizes, least recently used first. */
+	private final LinkedHashMap<String, Long> m_entries = new LinkedHashMap<String, Long>(64, 0.75f, true);
+	private long m_size;
+	private long m_hits;
+	private long m_misses;
+
+	private static final String MANIFEST_SUFFIX = ".manifest", XML_SUFFIX = ".xml", TEMP_SUFFIX = ".tmp";
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+}
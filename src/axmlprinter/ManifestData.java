@@ -14,6 +14,7 @@ import org.xml.sax.Attributes;
  * Class containing the manifest info obtained during the parsing.
  */
 public final class ManifestData implements Serializable {
+	private static final long serialVersionUID = -3603274712839383175L;
 
 	/**
 	 * Value returned by {@link #getMinSdkVersion()} when the value of the
@@ -0,0 +1,377 @@
+package axmlprinter;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Reads {@link ManifestData} records written by {@link ManifestDataWriter}.
+ *
+ * <pre>
+ * ManifestDataReader reader = new ManifestDataReader(in);
+ * ManifestData manifest;
+ * while ((manifest = reader.read()) != null) {
+ * 	...
+ * }
+ * reader.close();
+ * </pre>
+ *
+ * Damaged input is reported with an IOException; lengths and counts are
+ * checked against the limits of the format before anything is allocated for
+ * them. Records are not length-prefixed, and later records refer to strings
+ * of earlier ones, so the rest of a stream can't be read past a damaged
+ * record.
+ * <p/>
+ * Reader is not thread-safe.
+ */
+public final class ManifestDataReader {
+
+	/**
+	 * @throws IOException
+	 *             if the stream doesn't start with the format's header, or
+	 *             has a newer version.
+	 */
+	public ManifestDataReader(InputStream in) throws IOException {
+		m_in = in;
+		m_buffer = new byte[BUFFER_SIZE];
+		m_strings = new ArrayList<String>();
+		for (byte b : ManifestDataWriter.MAGIC) {
+			if (readByte() != b) {
+				throw new IOException("Not a manifest data stream.");
+			}
+		}
+		int version = readVarInt();
+		if (version != ManifestDataWriter.VERSION) {
+			throw new IOException("Unsupported manifest data version " + version + ".");
+		}
+	}
+
+	/**
+	 * Decodes a single manifest.
+	 */
+	public static ManifestData decode(byte[] data) throws IOException {
+		ManifestDataReader reader = new ManifestDataReader(new ByteArrayInputStream(data));
+		ManifestData manifest = reader.read();
+		if (manifest == null) {
+			throw new EOFException();
+		}
+		return manifest;
+	}
+
+	/**
+	 * Returns the next manifest, or null at the end of the stream.
+	 *
+	 * @throws EOFException
+	 *             if the stream ends inside a record.
+	 */
+	public ManifestData read() throws IOException {
+		while (true) {
+			if (m_position == m_length && !fill()) {
+				// stream that wasn't closed by the writer
+				return null;
+			}
+			int record = readVarInt();
+			if (record == ManifestDataWriter.RECORD_END) {
+				return null;
+			} else if (record == ManifestDataWriter.RECORD_RESET_STRINGS) {
+				m_strings.clear();
+			} else if (record == ManifestDataWriter.RECORD_MANIFEST) {
+				return readManifest();
+			} else {
+				throw new IOException("Invalid record type " + record + ".");
+			}
+		}
+	}
+
+	public void close() throws IOException {
+		m_in.close();
+	}
+
+	// ///////////////////////////////// implementation
+
+	private ManifestData readManifest() throws IOException {
+		ManifestData manifest = new ManifestData();
+		int flags = readVarInt();
+		manifest.mDebuggable = getBoolean(flags >> 4);
+
+		manifest.mPackage = readString();
+		if ((flags & 1) != 0) {
+			manifest.mVersionCode = readSignedVarInt();
+		}
+		manifest.setMinSdkVersionString(readString());
+		manifest.setTargetSdkVersionString(Integer.toString(readSignedVarInt()));
+		if ((flags & (1 << 1)) != 0) {
+			manifest.mProcesses = new TreeSet<String>();
+			for (int i = readCount(); i != 0; --i) {
+				String process = readString();
+				if (process == null) {
+					// sets are sorted, so the writer never has null
+					throw new IOException("Invalid null process name.");
+				}
+				manifest.mProcesses.add(process);
+			}
+		}
+		readStrings(manifest.getUsesPermissions());
+		readStrings(manifest.getPermissions());
+
+		List<Activity> activities = manifest.mActivities;
+		for (int i = readCount(); i != 0; --i) {
+			activities.add(readActivity());
+		}
+		int launcher = readVarInt();
+		if (launcher < 0 || launcher > activities.size() + 1) {
+			throw new IOException("Invalid launcher activity index " + launcher + ".");
+		} else if (launcher > activities.size()) {
+			manifest.mLauncherActivity = readActivity();
+		} else if (launcher != 0) {
+			manifest.mLauncherActivity = activities.get(launcher - 1);
+		}
+
+		for (int i = readCount(); i != 0; --i) {
+			String key = readString();
+			int count = readCount();
+			List<SRPNode> nodes = new ArrayList<SRPNode>();
+			for (int j = 0; j != count; ++j) {
+				nodes.add(readNode());
+			}
+			manifest.mSRPToNode.put(key, nodes);
+		}
+
+		for (int i = readCount(); i != 0; --i) {
+			String name = readString();
+			manifest.mInstrumentations.add(new Instrumentation(name, readString()));
+		}
+		for (int i = readCount(); i != 0; --i) {
+			UsesLibrary library = new UsesLibrary();
+			library.mRequired = getBoolean(readVarInt());
+			library.mName = readString();
+			manifest.mLibraries.add(library);
+		}
+		for (int i = readCount(); i != 0; --i) {
+			UsesFeature feature = new UsesFeature();
+			feature.mRequired = getBoolean(readVarInt());
+			feature.mName = readString();
+			feature.mGlEsVersion = readSignedVarInt();
+			manifest.mFeatures.add(feature);
+		}
+
+		if ((flags & (1 << 2)) != 0) {
+			int screens = readVarInt();
+			SupportsScreens supportsScreens = new SupportsScreens();
+			supportsScreens.setResizeable(getBoolean(screens));
+			supportsScreens.setAnyDensity(getBoolean(screens >> 2));
+			supportsScreens.setSmallScreens(getBoolean(screens >> 4));
+			supportsScreens.setNormalScreens(getBoolean(screens >> 6));
+			supportsScreens.setLargeScreens(getBoolean(screens >> 8));
+			manifest.mSupportsScreensFromManifest = supportsScreens;
+		}
+		if ((flags & (1 << 3)) != 0) {
+			UsesConfiguration configuration = new UsesConfiguration();
+			int booleans = readVarInt();
+			configuration.mReqFiveWayNav = getBoolean(booleans);
+			configuration.mReqHardKeyboard = getBoolean(booleans >> 2);
+			configuration.mReqKeyboardType = getEnum(Keyboard.values(), readVarInt());
+			configuration.mReqTouchScreen = getEnum(TouchScreen.values(), readVarInt());
+			configuration.mReqNavigation = getEnum(Navigation.values(), readVarInt());
+			manifest.mUsesConfiguration = configuration;
+		}
+		return manifest;
+	}
+
+	private Activity readActivity() throws IOException {
+		int flags = readVarInt();
+		Activity activity = new Activity(readString());
+		if ((flags & 3) != 0) {
+			activity.setExported((flags & 3) == 2);
+		}
+		activity.setHasAction((flags & (1 << 2)) != 0);
+		activity.setHasMainAction((flags & (1 << 3)) != 0);
+		activity.setHasLauncherCategory((flags & (1 << 4)) != 0);
+		for (int i = readCount(); i != 0; --i) {
+			activity.addIntentFilter();
+			readIntentFilter(activity.getLastIntentFilter());
+		}
+		if ((flags & (1 << 5)) != 0) {
+			readAttributes(activity, null);
+		}
+		return activity;
+	}
+
+	private SRPNode readNode() throws IOException {
+		int flags = readVarInt();
+		String name = readString();
+		String permission = readString();
+		String readPermission = readString();
+		String writePermission = readString();
+		String category = readString();
+		SRPNode node = new SRPNode(name, (flags & 3) - 1, (flags & (1 << 2)) != 0, permission, readPermission, writePermission, category);
+		readStrings(node.mActions);
+		for (int i = readCount(); i != 0; --i) {
+			node.addIntentFilter();
+			readIntentFilter(node.getLastIntentFilter());
+		}
+		if ((flags & (1 << 3)) != 0) {
+			readAttributes(null, node);
+		}
+		return node;
+	}
+
+	private void readIntentFilter(IntentFilter filter) throws IOException {
+		filter.setPriority(readSignedVarInt());
+		readStrings(filter.getActions());
+		readStrings(filter.getCategories());
+		readStrings(filter.getDatas());
+	}
+
+	private void readAttributes(Activity activity, SRPNode node) throws IOException {
+		int count = readCount();
+		String[] names = new String[count];
+		String[] values = new String[count];
+		for (int i = 0; i != count; ++i) {
+			names[i] = readString();
+			values[i] = readString();
+		}
+		if (activity != null) {
+			activity.setAttributes(names, values);
+		} else {
+			node.setAttributes(names, values);
+		}
+	}
+
+	private <T extends Collection<String>> T readStrings(T strings) throws IOException {
+		for (int i = readCount(); i != 0; --i) {
+			strings.add(readString());
+		}
+		return strings;
+	}
+
+	/**
+	 * @see ManifestDataWriter#writeString(String)
+	 */
+	private String readString() throws IOException {
+		int index = readVarInt();
+		if (index == 0) {
+			return null;
+		}
+		if (index != 1) {
+			if (index < 0 || index - 2 >= m_strings.size()) {
+				throw new IOException("Invalid string index " + (index - 2) + ".");
+			}
+			return m_strings.get(index - 2);
+		}
+		int length = readVarInt();
+		if (length < 0 || length > ManifestDataWriter.MAX_STRING_LENGTH) {
+			throw new IOException("Invalid string length " + length + ".");
+		}
+		if (length > m_buffer.length) {
+			byte[] buffer = new byte[Math.max(length, m_buffer.length * 2)];
+			System.arraycopy(m_buffer, m_position, buffer, 0, m_length - m_position);
+			m_length -= m_position;
+			m_position = 0;
+			m_buffer = buffer;
+		}
+		if (m_length - m_position < length) {
+			compact();
+			while (m_length < length) {
+				if (!fill()) {
+					throw new EOFException();
+				}
+			}
+		}
+		String string = new String(m_buffer, m_position, length, ManifestDataWriter.UTF_8);
+		m_position += length;
+		m_strings.add(string);
+		return string;
+	}
+
+	/**
+	 * Reads a count or an index, which the writer never makes larger than
+	 * {@link ManifestDataWriter#MAX_COUNT}.
+	 */
+	private int readCount() throws IOException {
+		int count = readVarInt();
+		if (count < 0 || count > ManifestDataWriter.MAX_COUNT) {
+			throw new IOException("Invalid count " + count + ".");
+		}
+		return count;
+	}
+
+	private int readSignedVarInt() throws IOException {
+		int value = readVarInt();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private int readVarInt() throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = readByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Invalid varint.");
+	}
+
+	private int readByte() throws IOException {
+		if (m_position == m_length && !fill()) {
+			throw new EOFException();
+		}
+		return m_buffer[m_position++];
+	}
+
+	/**
+	 * Moves unread bytes to the start of the buffer.
+	 */
+	private void compact() {
+		System.arraycopy(m_buffer, m_position, m_buffer, 0, m_length - m_position);
+		m_length -= m_position;
+		m_position = 0;
+	}
+
+	/**
+	 * Reads more bytes into the buffer; returns false at the end of the
+	 * stream.
+	 */
+	private boolean fill() throws IOException {
+		if (m_position == m_length) {
+			m_position = m_length = 0;
+		}
+		int read = m_in.read(m_buffer, m_length, m_buffer.length - m_length);
+		if (read <= 0) {
+			return false;
+		}
+		m_length += read;
+		return true;
+	}
+
+	private static Boolean getBoolean(int tristate) {
+		switch (tristate & 3) {
+		case 1:
+			return Boolean.FALSE;
+		case 2:
+			return Boolean.TRUE;
+		default:
+			return null;
+		}
+	}
+
+	private static <T> T getEnum(T[] values, int ordinal) throws IOException {
+		if (ordinal < 0 || ordinal > values.length) {
+			throw new IOException("Invalid enum value " + ordinal + ".");
+		}
+		return ordinal != 0 ? values[ordinal - 1] : null;
+	}
+
+	private final InputStream m_in;
+	private final List<String> m_strings;
+	private byte[] m_buffer;
+	private int m_position;
+	private int m_length;
+
+	private static final int BUFFER_SIZE = 16 * 1024;
+}
@@ -0,0 +1,316 @@
+package axmlprinter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes {@link ManifestData} records in a compact binary format, read back
+ * by {@link ManifestDataReader}.
+ *
+ * <pre>
+ * ManifestDataWriter writer = new ManifestDataWriter(out);
+ * for (ManifestData manifest : manifests) {
+ * 	writer.write(manifest);
+ * }
+ * writer.close();
+ * </pre>
+ *
+ * The stream starts with a magic and a format version. Numbers are written as
+ * varints (signed ones zigzag-encoded), booleans and null markers of a node are
+ * packed into one flags varint. Strings are written once per stream and then
+ * referred to by their index in a string table, which is reset when it grows
+ * over {@link #MAX_STRINGS} so that memory stays bounded on long streams.
+ * <p/>
+ * Writer is not thread-safe.
+ */
+public final class ManifestDataWriter {
+
+	public ManifestDataWriter(OutputStream out) throws IOException {
+		m_out = out;
+		m_buffer = new byte[BUFFER_SIZE];
+		m_strings = new HashMap<String, Integer>();
+		writeRaw(MAGIC);
+		writeVarInt(VERSION);
+	}
+
+	/**
+	 * Encodes a single manifest.
+	 *
+	 * @throws IOException
+	 *             if the manifest exceeds the limits of the format.
+	 */
+	public static byte[] encode(ManifestData manifest) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+		ManifestDataWriter writer = new ManifestDataWriter(out);
+		writer.write(manifest);
+		writer.close();
+		return out.toByteArray();
+	}
+
+	/**
+	 * Appends the manifest to the stream.
+	 *
+	 * @throws IOException
+	 *             if the manifest exceeds the limits of the format, or the
+	 *             stream fails.
+	 */
+	public void write(ManifestData manifest) throws IOException {
+		if (m_strings.size() >= MAX_STRINGS) {
+			writeVarInt(RECORD_RESET_STRINGS);
+			m_strings.clear();
+		}
+		writeVarInt(RECORD_MANIFEST);
+		writeManifest(manifest);
+		if (m_length >= BUFFER_SIZE / 2) {
+			flushBuffer();
+		}
+	}
+
+	public void flush() throws IOException {
+		flushBuffer();
+		m_out.flush();
+	}
+
+	/**
+	 * Writes the end marker and closes the underlying stream.
+	 */
+	public void close() throws IOException {
+		writeVarInt(RECORD_END);
+		flushBuffer();
+		m_out.close();
+	}
+
+	// ///////////////////////////////// implementation
+
+	private void writeManifest(ManifestData manifest) throws IOException {
+		int flags = 0;
+		flags |= (manifest.mVersionCode != null ? 1 : 0);
+		flags |= (manifest.mProcesses != null ? 1 : 0) << 1;
+		flags |= (manifest.mSupportsScreensFromManifest != null ? 1 : 0) << 2;
+		flags |= (manifest.mUsesConfiguration != null ? 1 : 0) << 3;
+		flags |= getTristate(manifest.mDebuggable) << 4;
+		writeVarInt(flags);
+
+		writeString(manifest.mPackage);
+		if (manifest.mVersionCode != null) {
+			writeSignedVarInt(manifest.mVersionCode);
+		}
+		writeString(manifest.getMinSdkVersionString());
+		writeSignedVarInt(manifest.getTargetSdkVersion());
+		if (manifest.mProcesses != null) {
+			writeStrings(manifest.mProcesses);
+		}
+		writeStrings(manifest.getUsesPermissions());
+		writeStrings(manifest.getPermissions());
+
+		List<Activity> activities = manifest.mActivities;
+		writeCount(activities.size());
+		for (Activity activity : activities) {
+			writeActivity(activity);
+		}
+		int launcher = manifest.mLauncherActivity != null ? activities.indexOf(manifest.mLauncherActivity) : -1;
+		if (launcher == -1 && manifest.mLauncherActivity != null) {
+			// not one of the activities, so it's written separately
+			writeVarInt(activities.size() + 1);
+			writeActivity(manifest.mLauncherActivity);
+		} else {
+			writeVarInt(launcher + 1);
+		}
+
+		writeCount(manifest.mSRPToNode.size());
+		for (Map.Entry<String, List<SRPNode>> entry : manifest.mSRPToNode.entrySet()) {
+			writeString(entry.getKey());
+			writeCount(entry.getValue().size());
+			for (SRPNode node : entry.getValue()) {
+				writeNode(node);
+			}
+		}
+
+		writeCount(manifest.mInstrumentations.size());
+		for (Instrumentation instrumentation : manifest.mInstrumentations) {
+			writeString(instrumentation.getName());
+			writeString(instrumentation.getTargetPackage());
+		}
+		writeCount(manifest.mLibraries.size());
+		for (UsesLibrary library : manifest.mLibraries) {
+			writeVarInt(getTristate(library.mRequired));
+			writeString(library.mName);
+		}
+		writeCount(manifest.mFeatures.size());
+		for (UsesFeature feature : manifest.mFeatures) {
+			writeVarInt(getTristate(feature.mRequired));
+			writeString(feature.mName);
+			writeSignedVarInt(feature.mGlEsVersion);
+		}
+
+		SupportsScreens screens = manifest.mSupportsScreensFromManifest;
+		if (screens != null) {
+			writeVarInt(getTristate(screens.getResizeable()) | getTristate(screens.getAnyDensity()) << 2 | getTristate(screens.getSmallScreens()) << 4
+					| getTristate(screens.getNormalScreens()) << 6 | getTristate(screens.getLargeScreens()) << 8);
+		}
+		UsesConfiguration configuration = manifest.mUsesConfiguration;
+		if (configuration != null) {
+			writeVarInt(getTristate(configuration.mReqFiveWayNav) | getTristate(configuration.mReqHardKeyboard) << 2);
+			writeVarInt(configuration.mReqKeyboardType != null ? configuration.mReqKeyboardType.ordinal() + 1 : 0);
+			writeVarInt(configuration.mReqTouchScreen != null ? configuration.mReqTouchScreen.ordinal() + 1 : 0);
+			writeVarInt(configuration.mReqNavigation != null ? configuration.mReqNavigation.ordinal() + 1 : 0);
+		}
+	}
+
+	private void writeActivity(Activity activity) throws IOException {
+		int flags = activity.isExported() ? 2 : (activity.isNotExported() ? 1 : 0);
+		flags |= (activity.hasAction() ? 1 : 0) << 2;
+		flags |= (activity.hasMainAction() ? 1 : 0) << 3;
+		flags |= (activity.hasLauncherCategory() ? 1 : 0) << 4;
+		flags |= (activity.getAttributeNames() != null ? 1 : 0) << 5;
+		writeVarInt(flags);
+		writeString(activity.getName());
+		writeIntentFilters(activity.getIntentFilters());
+		writeAttributes(activity.getAttributeNames(), activity.getAttributeValues());
+	}
+
+	private void writeNode(SRPNode node) throws IOException {
+		int flags = node.getExported() + 1;
+		flags |= (node.isEnabled() ? 1 : 0) << 2;
+		flags |= (node.getAttributeNames() != null ? 1 : 0) << 3;
+		writeVarInt(flags);
+		writeString(node.getName());
+		writeString(node.getPermission());
+		writeString(node.getReadPermission());
+		writeString(node.getWritePermission());
+		writeString(node.getCategory());
+		writeStrings(node.getActions());
+		writeIntentFilters(node.getIntentFilters());
+		writeAttributes(node.getAttributeNames(), node.getAttributeValues());
+	}
+
+	private void writeIntentFilters(List<IntentFilter> filters) throws IOException {
+		writeCount(filters.size());
+		for (IntentFilter filter : filters) {
+			writeSignedVarInt(filter.getPriority());
+			writeStrings(filter.getActions());
+			writeStrings(filter.getCategories());
+			writeStrings(filter.getDatas());
+		}
+	}
+
+	private void writeAttributes(String[] names, String[] values) throws IOException {
+		if (names == null) {
+			return;
+		}
+		writeCount(names.length);
+		for (int i = 0; i != names.length; ++i) {
+			writeString(names[i]);
+			writeString(values[i]);
+		}
+	}
+
+	private void writeStrings(Collection<String> strings) throws IOException {
+		writeCount(strings.size());
+		for (String string : strings) {
+			writeString(string);
+		}
+	}
+
+	/**
+	 * Writes 0 for null, index + 2 for a string in the table, or 1 followed by
+	 * the string, which is then added to the table.
+	 */
+	private void writeString(String string) throws IOException {
+		if (string == null) {
+			writeVarInt(0);
+			return;
+		}
+		Integer index = m_strings.get(string);
+		if (index != null) {
+			writeVarInt(index + 2);
+			return;
+		}
+		m_strings.put(string, m_strings.size());
+		byte[] bytes = string.getBytes(UTF_8);
+		if (bytes.length > MAX_STRING_LENGTH) {
+			throw new IOException("String is too long (" + bytes.length + " bytes).");
+		}
+		writeVarInt(1);
+		writeVarInt(bytes.length);
+		writeRaw(bytes);
+	}
+
+	private void writeCount(int count) throws IOException {
+		if (count > MAX_COUNT) {
+			throw new IOException("Too many elements (" + count + ").");
+		}
+		writeVarInt(count);
+	}
+
+	private void writeSignedVarInt(int value) {
+		writeVarInt((value << 1) ^ (value >> 31));
+	}
+
+	private void writeVarInt(int value) {
+		ensureCapacity(5);
+		while ((value & ~0x7F) != 0) {
+			m_buffer[m_length++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		m_buffer[m_length++] = (byte) value;
+	}
+
+	private void writeRaw(byte[] bytes) {
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, m_buffer, m_length, bytes.length);
+		m_length += bytes.length;
+	}
+
+	private void ensureCapacity(int length) {
+		if (m_length + length > m_buffer.length) {
+			byte[] buffer = new byte[Math.max(m_buffer.length * 2, m_length + length)];
+			System.arraycopy(m_buffer, 0, buffer, 0, m_length);
+			m_buffer = buffer;
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		m_out.write(m_buffer, 0, m_length);
+		m_length = 0;
+	}
+
+	/**
+	 * Returns 0 for null, 1 for false, 2 for true.
+	 */
+	private static int getTristate(Boolean value) {
+		return value == null ? 0 : (value ? 2 : 1);
+	}
+
+	private final OutputStream m_out;
+	private final Map<String, Integer> m_strings;
+	private byte[] m_buffer;
+	private int m_length;
+
+	/**
+	 * Size of the string table at which it's reset.
+	 */
+	public static final int MAX_STRINGS = 1 << 16;
+
+	/**
+	 * Limits of the format, so that a reader can reject damaged lengths
+	 * before allocating for them: elements of a list, and UTF-8 bytes of a
+	 * string.
+	 */
+	public static final int MAX_COUNT = 1 << 20, MAX_STRING_LENGTH = 1 << 20;
+
+	static final byte[] MAGIC = { 'A', 'X', 'M', 'D' };
+
+	static final int VERSION = 1;
+
+	static final int RECORD_END = 0, RECORD_MANIFEST = 1, RECORD_RESET_STRINGS = 2;
+
+	private static final int BUFFER_SIZE = 16 * 1024;
+
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+}
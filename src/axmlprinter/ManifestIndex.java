@@ -0,0 +1,772 @@
+package axmlprinter;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Inverted index from manifest terms to the packages that have them, built
+ * by {@link ManifestIndexBuilder}.
+ *
+ * <pre>
+ * ManifestIndex index = ManifestIndex.read(new File("manifests.idx"));
+ * ManifestIndex.Query query = ManifestIndex.Query.and(
+ * 		ManifestIndex.Query.term("exported.receiver.action", "android.intent.action.BOOT_COMPLETED"),
+ * 		ManifestIndex.Query.not(ManifestIndex.Query.term(ManifestIndex.USES_PERMISSION, "android.permission.RECEIVE_BOOT_COMPLETED")));
+ * for (int id : index.search(query)) {
+ * 	System.out.println(index.getPackage(id));
+ * }
+ * </pre>
+ *
+ * Terms are "field:value" strings. Each manifest has:
+ * <ul>
+ * <li>"uses-permission:" and "permission:" terms for requested and declared
+ * permissions,</li>
+ * <li>"activity:", "service:", "receiver:" and "provider:" terms for
+ * component class names,</li>
+ * <li>"action:" and "category:" terms for intent filters of any component,
+ * and the same scoped to the component kind ("receiver.action:"),</li>
+ * <li>"exported." variants of the component terms for exported components
+ * ("exported.receiver.action:"). A component without the exported attribute
+ * counts as exported when it has intent filters. A provider without it also
+ * counts as exported when {@link ManifestData#getTargetSdkVersion()} is
+ * below 17, the platform default then, unless it is 0 (a codename).</li>
+ * </ul>
+ * Packages and terms have dense IDs; term IDs follow the byte order of the
+ * terms. The postings of a term are stored either as varint-encoded gaps
+ * between package IDs, or as a bitmap over all packages if that is smaller,
+ * which is the case for common terms. The index is mapped; opening it only
+ * checks the offset tables, and a query reads only the postings of its terms
+ * and evaluates the smallest operands of an AND first.
+ * <p/>
+ * Index is thread-safe.
+ */
+public final class ManifestIndex {
+
+	/**
+	 * Maps the index file.
+	 */
+	public static ManifestIndex read(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			return new ManifestIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Opens the index in the remaining bytes of the buffer. The buffer is
+	 * referenced, not copied, and must not be modified while the index is
+	 * used.
+	 *
+	 * @throws IOException
+	 *             if the index is malformed.
+	 */
+	public ManifestIndex(ByteBuffer buffer) throws IOException {
+		m_buffer = buffer.slice();
+		int limit = m_buffer.limit();
+		if (limit < HEADER_SIZE) {
+			throw new IOException("Index is truncated.");
+		}
+		for (int i = 0; i != MAGIC.length; ++i) {
+			if (m_buffer.get(i) != MAGIC[i]) {
+				throw new IOException("Not a manifest index.");
+			}
+		}
+		int version = m_buffer.getInt(4);
+		if (version != VERSION) {
+			throw new IOException("Unsupported manifest index version " + version + ".");
+		}
+		m_packageCount = m_buffer.getInt(8);
+		m_termCount = m_buffer.getInt(12);
+		m_packageOffsets = m_buffer.getInt(16);
+		m_packageData = m_buffer.getInt(20);
+		m_termOffsets = m_buffer.getInt(24);
+		m_termData = m_buffer.getInt(28);
+		m_postingOffsets = m_buffer.getInt(32);
+		m_postingCounts = m_buffer.getInt(36);
+		m_postings = m_buffer.getInt(40);
+		m_bitmapWords = (m_packageCount + 63) >>> 6;
+		if (m_packageCount < 0 || m_termCount < 0
+				|| !isInside(m_packageOffsets, 4L * m_packageCount + 4) || !isInside(m_packageData, getInt(m_packageOffsets, m_packageCount))
+				|| !isInside(m_termOffsets, 4L * m_termCount + 4) || !isInside(m_termData, getInt(m_termOffsets, m_termCount))
+				|| !isInside(m_postingOffsets, 4L * m_termCount + 4) || !isInside(m_postingCounts, 4L * m_termCount)
+				|| !isInside(m_postings, getInt(m_postingOffsets, m_termCount))) {
+			throw new IOException("Index is truncated.");
+		}
+		checkOffsets(m_packageOffsets, m_packageCount);
+		checkOffsets(m_termOffsets, m_termCount);
+		checkOffsets(m_postingOffsets, m_termCount);
+		for (int i = 0; i != m_termCount; ++i) {
+			int length = getInt(m_postingOffsets, i + 1) - getInt(m_postingOffsets, i);
+			int count = getInt(m_postingCounts, i);
+			// a varint takes at least a byte
+			boolean valid = (count & FLAG_BITMAP) != 0 ? length == 8 * m_bitmapWords : count <= length;
+			if (!valid) {
+				throw new IOException("Invalid postings of term " + i + ".");
+			}
+		}
+	}
+
+	/**
+	 * Returns number of packages; package IDs are 0 to count - 1.
+	 */
+	public int getPackageCount() {
+		return m_packageCount;
+	}
+
+	/**
+	 * Returns package name of the ID, or null if the manifest had none.
+	 */
+	public String getPackage(int id) {
+		checkIndex(id, m_packageCount);
+		String name = getString(m_packageOffsets, m_packageData, id);
+		return name.length() != 0 ? name : null;
+	}
+
+	/**
+	 * Returns number of distinct terms; term IDs are 0 to count - 1.
+	 */
+	public int getTermCount() {
+		return m_termCount;
+	}
+
+	public String getTerm(int id) {
+		checkIndex(id, m_termCount);
+		return getString(m_termOffsets, m_termData, id);
+	}
+
+	/**
+	 * Returns ID of the term, or -1 if no package has it.
+	 */
+	public int getTermId(String term) {
+		byte[] bytes = term.getBytes(ManifestDataWriter.UTF_8);
+		int low = 0;
+		int high = m_termCount - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int result = compareTerm(middle, bytes);
+			if (result < 0) {
+				low = middle + 1;
+			} else if (result > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns number of packages that have the term.
+	 */
+	public int getPackageCount(String term) {
+		int id = getTermId(term);
+		return id != -1 ? getPostingCount(id) : 0;
+	}
+
+	/**
+	 * Returns IDs of packages that have the term, in ascending order.
+	 */
+	public int[] getPackageIds(String term) {
+		return search(Query.term(term));
+	}
+
+	/**
+	 * Returns IDs of packages that match the query, in ascending order.
+	 */
+	public int[] search(Query query) {
+		return query.evaluate(this).toArray();
+	}
+
+	/**
+	 * Returns number of packages that match the query.
+	 */
+	public int count(Query query) {
+		return query.evaluate(this).size();
+	}
+
+	/**
+	 * Returns "field:value" term.
+	 */
+	public static String term(String field, String value) {
+		return field + ':' + value;
+	}
+
+	/**
+	 * Boolean query over the terms of an index.
+	 */
+	public static abstract class Query {
+
+		/**
+		 * Matches packages that have the "field:value" term.
+		 */
+		public static Query term(String field, String value) {
+			return new TermQuery(ManifestIndex.term(field, value));
+		}
+
+		/**
+		 * Matches packages that have the term.
+		 */
+		public static Query term(String term) {
+			return new TermQuery(term);
+		}
+
+		/**
+		 * Matches packages that match all the queries. NOT operands are
+		 * subtracted from the rest rather than evaluated on their own.
+		 */
+		public static Query and(Query... queries) {
+			return new AndQuery(queries);
+		}
+
+		/**
+		 * Matches packages that match any of the queries.
+		 */
+		public static Query or(Query... queries) {
+			return new OrQuery(queries);
+		}
+
+		/**
+		 * Matches packages that don't match the query.
+		 */
+		public static Query not(Query query) {
+			return new NotQuery(query);
+		}
+
+		Query() {
+		}
+
+		/**
+		 * Returns upper bound of the number of matches, used to order the
+		 * operands of an AND.
+		 */
+		abstract int estimate(ManifestIndex index);
+
+		abstract PackageSet evaluate(ManifestIndex index);
+	}
+
+	// ///////////////////////////////// implementation
+
+	private static final class TermQuery extends Query {
+
+		TermQuery(String term) {
+			m_term = term;
+		}
+
+		@Override
+		int estimate(ManifestIndex index) {
+			return index.getPackageCount(m_term);
+		}
+
+		@Override
+		PackageSet evaluate(ManifestIndex index) {
+			int id = index.getTermId(m_term);
+			return id != -1 ? index.readPostings(id) : new PackageSet(new int[0]);
+		}
+
+		@Override
+		public String toString() {
+			return m_term;
+		}
+
+		private final String m_term;
+	}
+
+	private static final class AndQuery extends Query {
+
+		AndQuery(Query[] queries) {
+			m_queries = queries.clone();
+		}
+
+		@Override
+		int estimate(ManifestIndex index) {
+			int estimate = index.m_packageCount;
+			for (Query query : m_queries) {
+				if (!(query instanceof NotQuery)) {
+					estimate = Math.min(estimate, query.estimate(index));
+				}
+			}
+			return estimate;
+		}
+
+		@Override
+		PackageSet evaluate(final ManifestIndex index) {
+			List<Query> positive = new ArrayList<Query>(m_queries.length);
+			List<Query> negative = new ArrayList<Query>();
+			for (Query query : m_queries) {
+				if (query instanceof NotQuery) {
+					negative.add(((NotQuery) query).m_query);
+				} else {
+					positive.add(query);
+				}
+			}
+			// intersecting from the smallest operand keeps the sets small,
+			// and an empty one makes the rest unnecessary to read
+			Comparator<Query> bySize = new Comparator<Query>() {
+				public int compare(Query a, Query b) {
+					return compareInts(a.estimate(index), b.estimate(index));
+				}
+			};
+			Collections.sort(positive, bySize);
+			PackageSet result = positive.isEmpty() ? PackageSet.all(index.m_packageCount) : positive.get(0).evaluate(index);
+			for (int i = 1; i < positive.size() && result.size() != 0; ++i) {
+				result = index.filter(result, positive.get(i), true);
+			}
+			for (int i = 0; i < negative.size() && result.size() != 0; ++i) {
+				result = index.filter(result, negative.get(i), false);
+			}
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			return join(" AND ", m_queries);
+		}
+
+		private final Query[] m_queries;
+	}
+
+	private static final class OrQuery extends Query {
+
+		OrQuery(Query[] queries) {
+			m_queries = queries.clone();
+		}
+
+		@Override
+		int estimate(ManifestIndex index) {
+			long estimate = 0;
+			for (Query query : m_queries) {
+				estimate += query.estimate(index);
+			}
+			return (int) Math.min(estimate, index.m_packageCount);
+		}
+
+		@Override
+		PackageSet evaluate(ManifestIndex index) {
+			PackageSet result = new PackageSet(new int[0]);
+			for (Query query : m_queries) {
+				result = result.or(query.evaluate(index));
+			}
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			return join(" OR ", m_queries);
+		}
+
+		private final Query[] m_queries;
+	}
+
+	private static final class NotQuery extends Query {
+
+		NotQuery(Query query) {
+			m_query = query;
+		}
+
+		@Override
+		int estimate(ManifestIndex index) {
+			return index.m_packageCount;
+		}
+
+		@Override
+		PackageSet evaluate(ManifestIndex index) {
+			return PackageSet.all(index.m_packageCount).andNot(m_query.evaluate(index));
+		}
+
+		@Override
+		public String toString() {
+			return "NOT " + m_query;
+		}
+
+		private final Query m_query;
+	}
+
+	/**
+	 * Set of package IDs, either as a sorted array or as a bitmap. Sets are
+	 * not modified once created.
+	 */
+	static final class PackageSet {
+
+		PackageSet(int[] ids) {
+			m_ids = ids;
+			m_bits = null;
+			m_size = ids.length;
+		}
+
+		PackageSet(long[] bits) {
+			m_ids = null;
+			m_bits = bits;
+			int size = 0;
+			for (long word : bits) {
+				size += Long.bitCount(word);
+			}
+			m_size = size;
+		}
+
+		static PackageSet all(int packageCount) {
+			long[] bits = new long[(packageCount + 63) >>> 6];
+			Arrays.fill(bits, -1L);
+			if ((packageCount & 63) != 0) {
+				bits[bits.length - 1] = (1L << packageCount) - 1;
+			}
+			return new PackageSet(bits);
+		}
+
+		int size() {
+			return m_size;
+		}
+
+		boolean isArray() {
+			return m_ids != null;
+		}
+
+		int[] toArray() {
+			if (m_ids != null) {
+				return m_ids;
+			}
+			int[] ids = new int[m_size];
+			int length = 0;
+			for (int i = 0; i != m_bits.length; ++i) {
+				for (long word = m_bits[i]; word != 0; word &= word - 1) {
+					ids[length++] = (i << 6) + Long.numberOfTrailingZeros(word);
+				}
+			}
+			return ids;
+		}
+
+		PackageSet and(PackageSet other) {
+			if (m_ids == null && other.m_ids == null) {
+				long[] bits = new long[m_bits.length];
+				for (int i = 0; i != bits.length; ++i) {
+					bits[i] = m_bits[i] & other.m_bits[i];
+				}
+				return new PackageSet(bits);
+			}
+			if (m_ids == null) {
+				return other.and(this);
+			}
+			if (other.m_ids == null) {
+				return filter(other.m_bits, true);
+			}
+			PackageSet small = m_size <= other.m_size ? this : other;
+			PackageSet large = small == this ? other : this;
+			int[] ids = new int[small.m_size];
+			int length = 0;
+			if ((long) small.m_size * 16 < large.m_size) {
+				// much smaller: search the large one instead of merging
+				int from = 0;
+				for (int id : small.m_ids) {
+					int index = Arrays.binarySearch(large.m_ids, from, large.m_size, id);
+					if (index >= 0) {
+						ids[length++] = id;
+						from = index + 1;
+					} else {
+						from = -index - 1;
+					}
+				}
+			} else {
+				for (int i = 0, j = 0; i != small.m_size && j != large.m_size;) {
+					int a = small.m_ids[i];
+					int b = large.m_ids[j];
+					if (a < b) {
+						++i;
+					} else if (a > b) {
+						++j;
+					} else {
+						ids[length++] = a;
+						++i;
+						++j;
+					}
+				}
+			}
+			return new PackageSet(Arrays.copyOf(ids, length));
+		}
+
+		PackageSet or(PackageSet other) {
+			if (m_size == 0) {
+				return other;
+			}
+			if (other.m_size == 0) {
+				return this;
+			}
+			if (m_ids != null && other.m_ids != null) {
+				int[] ids = new int[m_size + other.m_size];
+				int length = 0;
+				int i = 0;
+				int j = 0;
+				while (i != m_size && j != other.m_size) {
+					int a = m_ids[i];
+					int b = other.m_ids[j];
+					if (a <= b) {
+						ids[length++] = a;
+						++i;
+						if (a == b) {
+							++j;
+						}
+					} else {
+						ids[length++] = b;
+						++j;
+					}
+				}
+				while (i != m_size) {
+					ids[length++] = m_ids[i++];
+				}
+				while (j != other.m_size) {
+					ids[length++] = other.m_ids[j++];
+				}
+				return new PackageSet(Arrays.copyOf(ids, length));
+			}
+			long[] bits = m_ids == null ? m_bits.clone() : other.m_bits.clone();
+			PackageSet rest = m_ids == null ? other : this;
+			if (rest.m_ids != null) {
+				for (int id : rest.m_ids) {
+					bits[id >>> 6] |= 1L << id;
+				}
+			} else {
+				for (int i = 0; i != bits.length; ++i) {
+					bits[i] |= rest.m_bits[i];
+				}
+			}
+			return new PackageSet(bits);
+		}
+
+		PackageSet andNot(PackageSet other) {
+			if (m_size == 0 || other.m_size == 0) {
+				return this;
+			}
+			if (m_ids != null) {
+				if (other.m_ids == null) {
+					return filter(other.m_bits, false);
+				}
+				int[] ids = new int[m_size];
+				int length = 0;
+				for (int i = 0, j = 0; i != m_size; ++i) {
+					int id = m_ids[i];
+					while (j != other.m_size && other.m_ids[j] < id) {
+						++j;
+					}
+					if (j == other.m_size || other.m_ids[j] != id) {
+						ids[length++] = id;
+					}
+				}
+				return new PackageSet(Arrays.copyOf(ids, length));
+			}
+			long[] bits = m_bits.clone();
+			if (other.m_ids != null) {
+				for (int id : other.m_ids) {
+					bits[id >>> 6] &= ~(1L << id);
+				}
+			} else {
+				for (int i = 0; i != bits.length; ++i) {
+					bits[i] &= ~other.m_bits[i];
+				}
+			}
+			return new PackageSet(bits);
+		}
+
+		/**
+		 * Returns IDs of this (array) set that are, or are not, in the
+		 * bitmap.
+		 */
+		private PackageSet filter(long[] bits, boolean in) {
+			int[] ids = new int[m_size];
+			int length = 0;
+			for (int id : m_ids) {
+				if (((bits[id >>> 6] & (1L << id)) != 0) == in) {
+					ids[length++] = id;
+				}
+			}
+			return new PackageSet(Arrays.copyOf(ids, length));
+		}
+
+		private final int[] m_ids;
+		private final long[] m_bits;
+		private final int m_size;
+	}
+
+	/**
+	 * Returns packages of the set that match, or don't match, the query. A
+	 * small set is checked against a bitmap term in place, without reading
+	 * the whole bitmap.
+	 */
+	private PackageSet filter(PackageSet set, Query query, boolean in) {
+		if (set.isArray() && query instanceof TermQuery) {
+			int term = getTermId(((TermQuery) query).m_term);
+			if (term == -1) {
+				return in ? new PackageSet(new int[0]) : set;
+			}
+			int count = getInt(m_postingCounts, term);
+			if ((count & FLAG_BITMAP) != 0 && set.size() < m_bitmapWords) {
+				int offset = m_postings + getInt(m_postingOffsets, term);
+				int[] ids = new int[set.size()];
+				int length = 0;
+				for (int id : set.toArray()) {
+					if (((m_buffer.getLong(offset + 8 * (id >>> 6)) & (1L << id)) != 0) == in) {
+						ids[length++] = id;
+					}
+				}
+				return new PackageSet(Arrays.copyOf(ids, length));
+			}
+		}
+		PackageSet other = query.evaluate(this);
+		return in ? set.and(other) : set.andNot(other);
+	}
+
+	private int getPostingCount(int term) {
+		return getInt(m_postingCounts, term) & ~FLAG_BITMAP;
+	}
+
+	private PackageSet readPostings(int term) {
+		int count = getInt(m_postingCounts, term);
+		int offset = m_postings + getInt(m_postingOffsets, term);
+		if ((count & FLAG_BITMAP) != 0) {
+			long[] bits = new long[m_bitmapWords];
+			ByteBuffer buffer = m_buffer.duplicate();
+			buffer.position(offset);
+			buffer.asLongBuffer().get(bits);
+			return new PackageSet(bits);
+		}
+		int[] ids = new int[count];
+		int id = -1;
+		for (int i = 0; i != count; ++i) {
+			int delta = 0;
+			for (int shift = 0;; shift += 7) {
+				byte b = m_buffer.get(offset++);
+				delta |= (b & 0x7F) << shift;
+				if (b >= 0) {
+					break;
+				}
+			}
+			id += delta + 1;
+			ids[i] = id;
+		}
+		return new PackageSet(ids);
+	}
+
+	private String getString(int offsets, int data, int index) {
+		int start = getInt(offsets, index);
+		byte[] bytes = new byte[getInt(offsets, index + 1) - start];
+		ByteBuffer buffer = m_buffer.duplicate();
+		buffer.position(data + start);
+		buffer.get(bytes);
+		return new String(bytes, ManifestDataWriter.UTF_8);
+	}
+
+	/**
+	 * Compares the term with the bytes, without decoding it.
+	 */
+	private int compareTerm(int term, byte[] bytes) {
+		int start = m_termData + getInt(m_termOffsets, term);
+		int length = m_termData + getInt(m_termOffsets, term + 1) - start;
+		int common = Math.min(length, bytes.length);
+		for (int i = 0; i != common; ++i) {
+			int difference = (m_buffer.get(start + i) & 0xFF) - (bytes[i] & 0xFF);
+			if (difference != 0) {
+				return difference;
+			}
+		}
+		return length - bytes.length;
+	}
+
+	private int getInt(int array, int index) {
+		return m_buffer.getInt(array + 4 * index);
+	}
+
+	/**
+	 * Checks that the 'count' + 1 offsets start at 0 or later and don't
+	 * decrease; the last one was checked against the data already.
+	 */
+	private void checkOffsets(int offsets, int count) throws IOException {
+		int previous = 0;
+		for (int i = 0; i <= count; ++i) {
+			int offset = getInt(offsets, i);
+			if (offset < previous) {
+				throw new IOException("Invalid offset " + offset + " at " + i + ".");
+			}
+			previous = offset;
+		}
+	}
+
+	private boolean isInside(int offset, long length) {
+		return offset >= 0 && length >= 0 && offset + length <= m_buffer.limit();
+	}
+
+	/**
+	 * Compares byte arrays as unsigned bytes, the order of terms in the index.
+	 */
+	static int compare(byte[] a, byte[] b) {
+		int common = Math.min(a.length, b.length);
+		for (int i = 0; i != common; ++i) {
+			int difference = (a[i] & 0xFF) - (b[i] & 0xFF);
+			if (difference != 0) {
+				return difference;
+			}
+		}
+		return a.length - b.length;
+	}
+
+	private static int compareInts(int a, int b) {
+		return a < b ? -1 : (a > b ? 1 : 0);
+	}
+
+	private static String join(String operator, Query[] queries) {
+		StringBuilder result = new StringBuilder("(");
+		for (int i = 0; i != queries.length; ++i) {
+			if (i != 0) {
+				result.append(operator);
+			}
+			result.append(queries[i]);
+		}
+		return result.append(')').toString();
+	}
+
+	private static void checkIndex(int index, int count) {
+		if (index < 0 || index >= count) {
+			throw new IndexOutOfBoundsException("Invalid index " + index + " (count is " + count + ").");
+		}
+	}
+
+	private final ByteBuffer m_buffer;
+	private final int m_packageCount;
+	private final int m_termCount;
+	private final int m_bitmapWords;
+	/* Offsets of the sections. */
+	private final int m_packageOffsets;
+	private final int m_packageData;
+	private final int m_termOffsets;
+	private final int m_termData;
+	private final int m_postingOffsets;
+	private final int m_postingCounts;
+	private final int m_postings;
+
+	/**
+	 * Term fields.
+	 */
+	public static final String USES_PERMISSION = "uses-permission", PERMISSION = "permission", ACTIVITY = "activity", SERVICE = "service",
+			RECEIVER = "receiver", PROVIDER = "provider", ACTION = "action", CATEGORY = "category";
+
+	/**
+	 * Prefix of the fields of exported components.
+	 */
+	public static final String EXPORTED = "exported.";
+
+	static final byte[] MAGIC = { 'A', 'X', 'M', 'I' };
+
+	static final int VERSION = 1;
+
+	/* magic, version, counts of packages and terms, 7 section offsets */
+	static final int HEADER_SIZE = 44;
+
+	/* Posting count flag of terms stored as bitmaps. */
+	static final int FLAG_BITMAP = 0x80000000;
+}
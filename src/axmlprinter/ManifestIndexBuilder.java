@@ -0,0 +1,343 @@
+package axmlprinter;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a {@link ManifestIndex} over many manifests.
+ *
+ * <pre>
+ * ManifestIndexBuilder builder = new ManifestIndexBuilder();
+ * for (File apk : apks) {
+ * 	builder.add(cache.getManifest(apk));
+ * }
+ * builder.write(new File("manifests.idx"));
+ * </pre>
+ *
+ * Packages get IDs in the order they are added. Postings are kept
+ * delta-encoded as varints while building, so a large corpus takes about a
+ * byte or two per term occurrence.
+ * <p/>
+ * Builder is not thread-safe.
+ */
+public final class ManifestIndexBuilder {
+
+	public ManifestIndexBuilder() {
+		m_packages = new ArrayList<String>();
+		m_termIds = new HashMap<String, Integer>();
+		m_terms = new ArrayList<String>();
+		m_postings = new byte[INITIAL_CAPACITY][];
+		m_postingLengths = new int[INITIAL_CAPACITY];
+		m_counts = new int[INITIAL_CAPACITY];
+		m_lastIds = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Adds the manifest's terms and returns its package ID.
+	 *
+	 * @see ManifestIndex for the terms.
+	 */
+	public int add(ManifestData manifest) {
+		int id = addPackage(manifest.getPackage());
+		addTerms(id, ManifestIndex.USES_PERMISSION, manifest.getUsesPermissions());
+		addTerms(id, ManifestIndex.PERMISSION, manifest.getPermissions());
+		for (Activity activity : manifest.getActivities()) {
+			boolean exported = activity.isExported() || (!activity.isNotExported() && !activity.getIntentFilters().isEmpty());
+			addComponent(id, ManifestIndex.ACTIVITY, activity.getName(), exported, activity.getIntentFilters());
+		}
+		addComponents(id, ManifestIndex.SERVICE, manifest.getServices(), false);
+		addComponents(id, ManifestIndex.RECEIVER, manifest.getReceivers(), false);
+		// before API 17, providers are exported unless they say otherwise;
+		// 0 is a codename, so a new platform
+		int targetSdkVersion = manifest.getTargetSdkVersion();
+		boolean exportedByDefault = targetSdkVersion != ManifestData.MIN_SDK_CODENAME && targetSdkVersion < 17;
+		addComponents(id, ManifestIndex.PROVIDER, manifest.getProviders(), exportedByDefault);
+		return id;
+	}
+
+	/**
+	 * Adds a package with arbitrary terms ("field:value") and returns its ID.
+	 */
+	public int add(String packageName, Collection<String> terms) {
+		int id = addPackage(packageName);
+		for (String term : terms) {
+			addTerm(id, term);
+		}
+		return id;
+	}
+
+	/**
+	 * Returns number of packages added.
+	 */
+	public int getPackageCount() {
+		return m_packages.size();
+	}
+
+	/**
+	 * Returns number of distinct terms.
+	 */
+	public int getTermCount() {
+		return m_terms.size();
+	}
+
+	public void write(File file) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			write(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes the index in the format read by {@link ManifestIndex}. The
+	 * stream is not closed.
+	 *
+	 * @throws IOException
+	 *             if the index doesn't fit the 2GB limit of the format.
+	 */
+	public void write(OutputStream stream) throws IOException {
+		int packageCount = m_packages.size();
+		int termCount = m_terms.size();
+
+		byte[][] packages = new byte[packageCount][];
+		for (int i = 0; i != packageCount; ++i) {
+			String name = m_packages.get(i);
+			packages[i] = (name != null ? name : "").getBytes(ManifestDataWriter.UTF_8);
+		}
+		final byte[][] terms = new byte[termCount][];
+		Integer[] order = new Integer[termCount];
+		for (int i = 0; i != termCount; ++i) {
+			terms[i] = m_terms.get(i).getBytes(ManifestDataWriter.UTF_8);
+			order[i] = i;
+		}
+		// the index looks terms up by binary search on their bytes
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return ManifestIndex.compare(terms[a], terms[b]);
+			}
+		});
+
+		// postings are written as varints or bitmaps, whichever is smaller
+		int bitmapLength = ((packageCount + 63) >>> 6) * 8;
+		long postingsLength = 0;
+		for (int i = 0; i != termCount; ++i) {
+			postingsLength += Math.min(m_postingLengths[i], bitmapLength);
+		}
+		long packageDataOffset = ManifestIndex.HEADER_SIZE + 4L * (packageCount + 1);
+		long termOffsetsOffset = packageDataOffset + getLength(packages);
+		long termDataOffset = termOffsetsOffset + 4L * (termCount + 1);
+		long postingOffsetsOffset = termDataOffset + getLength(terms);
+		long postingCountsOffset = postingOffsetsOffset + 4L * (termCount + 1);
+		long postingsOffset = postingCountsOffset + 4L * termCount;
+		if (postingsOffset + postingsLength > Integer.MAX_VALUE) {
+			throw new IOException("Index is too large (" + (postingsOffset + postingsLength) + " bytes).");
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+		out.write(ManifestIndex.MAGIC);
+		out.writeInt(ManifestIndex.VERSION);
+		out.writeInt(packageCount);
+		out.writeInt(termCount);
+		out.writeInt(ManifestIndex.HEADER_SIZE);
+		out.writeInt((int) packageDataOffset);
+		out.writeInt((int) termOffsetsOffset);
+		out.writeInt((int) termDataOffset);
+		out.writeInt((int) postingOffsetsOffset);
+		out.writeInt((int) postingCountsOffset);
+		out.writeInt((int) postingsOffset);
+
+		writeStrings(out, packages, null);
+		writeStrings(out, terms, order);
+
+		int offset = 0;
+		out.writeInt(offset);
+		for (int i = 0; i != termCount; ++i) {
+			offset += Math.min(m_postingLengths[order[i]], bitmapLength);
+			out.writeInt(offset);
+		}
+		for (int i = 0; i != termCount; ++i) {
+			int term = order[i];
+			out.writeInt(m_postingLengths[term] > bitmapLength ? m_counts[term] | ManifestIndex.FLAG_BITMAP : m_counts[term]);
+		}
+		long[] bitmap = new long[bitmapLength / 8];
+		for (int i = 0; i != termCount; ++i) {
+			int term = order[i];
+			if (m_postingLengths[term] > bitmapLength) {
+				writeBitmap(out, term, bitmap);
+			} else {
+				out.write(m_postings[term], 0, m_postingLengths[term]);
+			}
+		}
+		out.flush();
+	}
+
+	// ///////////////////////////////// implementation
+
+	private int addPackage(String packageName) {
+		m_packages.add(packageName);
+		return m_packages.size() - 1;
+	}
+
+	private void addComponents(int id, String kind, List<SRPNode> nodes, boolean exportedByDefault) {
+		for (SRPNode node : nodes) {
+			boolean exported = node.getExported() == 1 || (node.getExported() == -1 && (exportedByDefault || !node.getIntentFilters().isEmpty()));
+			addComponent(id, kind, node.getName(), exported, node.getIntentFilters());
+		}
+	}
+
+	private void addComponent(int id, String kind, String name, boolean exported, List<IntentFilter> filters) {
+		if (name != null) {
+			addTerm(id, ManifestIndex.term(kind, name));
+			if (exported) {
+				addTerm(id, ManifestIndex.term(ManifestIndex.EXPORTED + kind, name));
+			}
+		}
+		for (IntentFilter filter : filters) {
+			addFilterTerms(id, kind, exported, ManifestIndex.ACTION, filter.getActions());
+			addFilterTerms(id, kind, exported, ManifestIndex.CATEGORY, filter.getCategories());
+		}
+	}
+
+	/**
+	 * Adds "action:value", "receiver.action:value" and, for exported
+	 * components, "exported.receiver.action:value".
+	 */
+	private void addFilterTerms(int id, String kind, boolean exported, String field, List<String> values) {
+		String kindField = kind + '.' + field;
+		for (String value : values) {
+			if (value != null) {
+				addTerm(id, ManifestIndex.term(field, value));
+				addTerm(id, ManifestIndex.term(kindField, value));
+				if (exported) {
+					addTerm(id, ManifestIndex.term(ManifestIndex.EXPORTED + kindField, value));
+				}
+			}
+		}
+	}
+
+	private void addTerms(int id, String field, Collection<String> values) {
+		for (String value : values) {
+			if (value != null) {
+				addTerm(id, ManifestIndex.term(field, value));
+			}
+		}
+	}
+
+	private void addTerm(int id, String term) {
+		Integer termId = m_termIds.get(term);
+		int index;
+		if (termId == null) {
+			index = m_terms.size();
+			if (index == m_counts.length) {
+				growTerms();
+			}
+			m_termIds.put(term, index);
+			m_terms.add(term);
+			m_postings[index] = new byte[4];
+			m_lastIds[index] = -1;
+		} else {
+			index = termId;
+			if (m_lastIds[index] == id) {
+				// already added for this package
+				return;
+			}
+		}
+		appendVarInt(index, id - m_lastIds[index] - 1);
+		m_lastIds[index] = id;
+		++m_counts[index];
+	}
+
+	private void appendVarInt(int term, int value) {
+		byte[] posting = m_postings[term];
+		int length = m_postingLengths[term];
+		if (length + 5 > posting.length) {
+			posting = Arrays.copyOf(posting, Math.max(posting.length * 2, length + 5));
+			m_postings[term] = posting;
+		}
+		while ((value & ~0x7F) != 0) {
+			posting[length++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		posting[length++] = (byte) value;
+		m_postingLengths[term] = length;
+	}
+
+	private void growTerms() {
+		int capacity = m_counts.length * 2;
+		m_postings = Arrays.copyOf(m_postings, capacity);
+		m_postingLengths = Arrays.copyOf(m_postingLengths, capacity);
+		m_counts = Arrays.copyOf(m_counts, capacity);
+		m_lastIds = Arrays.copyOf(m_lastIds, capacity);
+	}
+
+	private void writeBitmap(DataOutputStream out, int term, long[] bitmap) throws IOException {
+		Arrays.fill(bitmap, 0);
+		byte[] posting = m_postings[term];
+		int length = m_postingLengths[term];
+		int id = -1;
+		for (int offset = 0; offset != length;) {
+			int delta = 0;
+			for (int shift = 0;; shift += 7) {
+				byte b = posting[offset++];
+				delta |= (b & 0x7F) << shift;
+				if (b >= 0) {
+					break;
+				}
+			}
+			id += delta + 1;
+			bitmap[id >>> 6] |= 1L << id;
+		}
+		for (long word : bitmap) {
+			out.writeLong(word);
+		}
+	}
+
+	/**
+	 * Writes offsets of the strings followed by their bytes, in the given
+	 * order (or as they are, if it's null).
+	 */
+	private static void writeStrings(DataOutputStream out, byte[][] strings, Integer[] order) throws IOException {
+		int offset = 0;
+		out.writeInt(offset);
+		for (int i = 0; i != strings.length; ++i) {
+			offset += strings[order != null ? order[i] : i].length;
+			out.writeInt(offset);
+		}
+		for (int i = 0; i != strings.length; ++i) {
+			out.write(strings[order != null ? order[i] : i]);
+		}
+	}
+
+	private static long getLength(byte[][] strings) {
+		long length = 0;
+		for (byte[] string : strings) {
+			length += string.length;
+		}
+		return length;
+	}
+
+	private final List<String> m_packages;
+	private final Map<String, Integer> m_termIds;
+	private final List<String> m_terms;
+	/*
+	 * Per term: package IDs as varint gaps, length of that data, number of
+	 * packages and the last package ID.
+	 */
+	private byte[][] m_postings;
+	private int[] m_postingLengths;
+	private int[] m_counts;
+	private int[] m_lastIds;
+
+	private static final int INITIAL_CAPACITY = 1024;
+}
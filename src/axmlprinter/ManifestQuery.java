@@ -0,0 +1,278 @@
+package axmlprinter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ * Values of a text manifest that the {@link AndroidManifest} helpers return,
+ * all read from a single parse with precompiled XPath expressions.
+ * <p/>
+ * {@link #get(IAbstractFile)} caches the result per file, and parses again
+ * only when the content of the file changed.
+ */
+public final class ManifestQuery {
+
+	/**
+	 * Returns values for the manifest file, from the cache if its content
+	 * didn't change since it was last parsed.
+	 *
+	 * @throws XPathExpressionException
+	 *             if the manifest cannot be parsed.
+	 * @throws StreamException
+	 *             If any error happens when reading the manifest.
+	 */
+	public static ManifestQuery get(IAbstractFile manifestFile) throws XPathExpressionException, StreamException {
+		byte[] content = readContents(manifestFile);
+		String key = manifestFile.getOsLocation();
+		if (key == null) {
+			return parse(content);
+		}
+		synchronized (sCache) {
+			CacheEntry entry = sCache.get(key);
+			if (entry != null && Arrays.equals(entry.mContent, content)) {
+				return entry.mQuery;
+			}
+		}
+		ManifestQuery query = parse(content);
+		synchronized (sCache) {
+			sCache.put(key, new CacheEntry(content, query));
+		}
+		return query;
+	}
+
+	/**
+	 * Parses the manifest from the stream (without caching).
+	 *
+	 * @throws XPathExpressionException
+	 *             if the manifest cannot be parsed.
+	 */
+	public static ManifestQuery parse(InputStream manifest) throws XPathExpressionException {
+		DocumentBuilder builder = sBuilder.get();
+		builder.reset();
+		Document document;
+		try {
+			document = builder.parse(manifest);
+		} catch (SAXException e) {
+			throw new XPathExpressionException(e);
+		} catch (IOException e) {
+			throw new XPathExpressionException(e);
+		}
+		return new ManifestQuery(document, sExpressions.get());
+	}
+
+	/**
+	 * Drops all cached values.
+	 */
+	public static void clearCache() {
+		synchronized (sCache) {
+			sCache.clear();
+		}
+	}
+
+	/**
+	 * @see AndroidManifest#getPackage(IAbstractFile)
+	 */
+	public String getPackage() {
+		return mPackage;
+	}
+
+	/**
+	 * @see AndroidManifest#getDebuggable(IAbstractFile)
+	 */
+	public boolean getDebuggable() {
+		// default is not debuggable, which is the same behavior as parseBoolean
+		return Boolean.parseBoolean(mDebuggable);
+	}
+
+	/**
+	 * @see AndroidManifest#getVersionCode(IAbstractFile)
+	 */
+	public int getVersionCode() {
+		try {
+			return Integer.parseInt(mVersionCode);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @see AndroidManifest#hasVersionCode(IAbstractFile)
+	 */
+	public boolean hasVersionCode() {
+		return mHasVersionCode;
+	}
+
+	/**
+	 * @see AndroidManifest#getMinSdkVersion(IAbstractFile)
+	 */
+	public Object getMinSdkVersion() {
+		try {
+			return Integer.valueOf(mMinSdkVersion);
+		} catch (NumberFormatException e) {
+			return mMinSdkVersion.length() > 0 ? mMinSdkVersion : null;
+		}
+	}
+
+	/**
+	 * @see AndroidManifest#getTargetSdkVersion(IAbstractFile)
+	 */
+	public Integer getTargetSdkVersion() {
+		try {
+			return Integer.valueOf(mTargetSdkVersion);
+		} catch (NumberFormatException e) {
+			return mTargetSdkVersion.length() > 0 ? -1 : null;
+		}
+	}
+
+	/**
+	 * @see AndroidManifest#getApplicationIcon(IAbstractFile)
+	 */
+	public String getApplicationIcon() {
+		return mApplicationIcon;
+	}
+
+	/**
+	 * @see AndroidManifest#getApplicationLabel(IAbstractFile)
+	 */
+	public String getApplicationLabel() {
+		return mApplicationLabel;
+	}
+
+	// ///////////////////////////////// implementation
+
+	private ManifestQuery(Document document, Expressions expressions) throws XPathExpressionException {
+		mPackage = expressions.mPackage.evaluate(document);
+		mDebuggable = expressions.mDebuggable.evaluate(document);
+		mVersionCode = expressions.mVersionCode.evaluate(document);
+		Node versionCode = (Node) expressions.mVersionCode.evaluate(document, XPathConstants.NODE);
+		mHasVersionCode = versionCode != null && versionCode.getNodeValue().length() > 0;
+		mMinSdkVersion = expressions.mMinSdkVersion.evaluate(document);
+		mTargetSdkVersion = expressions.mTargetSdkVersion.evaluate(document);
+		mApplicationIcon = expressions.mApplicationIcon.evaluate(document);
+		mApplicationLabel = expressions.mApplicationLabel.evaluate(document);
+	}
+
+	private static ManifestQuery parse(byte[] content) throws XPathExpressionException {
+		return parse(new ByteArrayInputStream(content));
+	}
+
+	private static byte[] readContents(IAbstractFile manifestFile) throws StreamException {
+		InputStream stream = manifestFile.getContents();
+		try {
+			ByteArrayOutputStream content = new ByteArrayOutputStream(4096);
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = stream.read(buffer)) != -1) {
+				content.write(buffer, 0, read);
+			}
+			return content.toByteArray();
+		} catch (IOException e) {
+			throw new StreamException(e);
+		} finally {
+			try {
+				stream.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	/**
+	 * Compiled expressions; XPathExpression is not thread-safe, so each thread
+	 * has its own.
+	 */
+	private static final class Expressions {
+		final XPathExpression mPackage;
+		final XPathExpression mDebuggable;
+		final XPathExpression mVersionCode;
+		final XPathExpression mMinSdkVersion;
+		final XPathExpression mTargetSdkVersion;
+		final XPathExpression mApplicationIcon;
+		final XPathExpression mApplicationLabel;
+
+		Expressions() throws XPathExpressionException {
+			XPath xPath = AndroidXPathFactory.newXPath();
+			String android = "/@" + AndroidXPathFactory.DEFAULT_NS_PREFIX + ":";
+			String manifest = "/" + AndroidManifest.NODE_MANIFEST;
+			String application = manifest + "/" + AndroidManifest.NODE_APPLICATION;
+			String usesSdk = manifest + "/" + AndroidManifest.NODE_USES_SDK;
+			mPackage = xPath.compile(manifest + "/@" + AndroidManifest.ATTRIBUTE_PACKAGE);
+			mDebuggable = xPath.compile(application + android + AndroidManifest.ATTRIBUTE_DEBUGGABLE);
+			mVersionCode = xPath.compile(manifest + android + AndroidManifest.ATTRIBUTE_VERSIONCODE);
+			mMinSdkVersion = xPath.compile(usesSdk + android + AndroidManifest.ATTRIBUTE_MIN_SDK_VERSION);
+			mTargetSdkVersion = xPath.compile(usesSdk + android + AndroidManifest.ATTRIBUTE_TARGET_SDK_VERSION);
+			mApplicationIcon = xPath.compile(application + android + AndroidManifest.ATTRIBUTE_ICON);
+			mApplicationLabel = xPath.compile(application + android + AndroidManifest.ATTRIBUTE_LABEL);
+		}
+	}
+
+	private static final class CacheEntry {
+		final byte[] mContent;
+		final ManifestQuery mQuery;
+
+		CacheEntry(byte[] content, ManifestQuery query) {
+			mContent = content;
+			mQuery = query;
+		}
+	}
+
+	private final String mPackage;
+	private final String mDebuggable;
+	private final String mVersionCode;
+	private final boolean mHasVersionCode;
+	private final String mMinSdkVersion;
+	private final String mTargetSdkVersion;
+	private final String mApplicationIcon;
+	private final String mApplicationLabel;
+
+	private final static int CACHE_SIZE = 64;
+
+	private final static Map<String, CacheEntry> sCache = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	private final static ThreadLocal<Expressions> sExpressions = new ThreadLocal<Expressions>() {
+		@Override
+		protected Expressions initialValue() {
+			try {
+				return new Expressions();
+			} catch (XPathExpressionException e) {
+				// expressions are constant
+				throw new IllegalStateException(e);
+			}
+		}
+	};
+
+	private final static ThreadLocal<DocumentBuilder> sBuilder = new ThreadLocal<DocumentBuilder>() {
+		@Override
+		protected DocumentBuilder initialValue() {
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setNamespaceAware(true);
+			try {
+				return factory.newDocumentBuilder();
+			} catch (ParserConfigurationException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	};
+}
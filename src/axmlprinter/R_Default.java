@@ -1,5 +1,6 @@
 package axmlprinter;
 import java.lang.reflect.Field;
+import java.util.Arrays;
 
 public class R_Default {
 	/**
@@ -963,21 +964,65 @@ public class R_Default {
 	public static final int yesNoPreferenceStyle = 16842896; // 0x1010090
 	public static final int zAdjustment = 16843201; // 0x10101c1
 
-	public static String getName(int id) {
+	/**
+	 * Ids of the int fields above, sorted, and the matching field names.
+	 * Built once, so that getName() does not have to scan the fields.
+	 */
+	private static final int[] sIds;
+	private static final String[] sNames;
+
+	static {
 		Field[] declaredFields = R_Default.class.getDeclaredFields();
-		for (Field field : declaredFields) {
+		long[] keys = new long[declaredFields.length];
+		int count = 0;
+		for (int i = 0; i != declaredFields.length; ++i) {
+			Field field = declaredFields[i];
 			if (int.class.equals(field.getType())) {
 				try {
-					int val = field.getInt(null);
-					if (val == id) {
-						return field.getName();
-					}
+					// sort by id, then by field order
+					keys[count++] = ((long) field.getInt(null) << 32) | i;
 				} catch (Exception e) {
 					e.printStackTrace();
 				}
 			}
 		}
-		return "";
+		Arrays.sort(keys, 0, count);
+
+		int[] ids = new int[count];
+		String[] names = new String[count];
+		int size = 0;
+		for (int i = 0; i != count; ++i) {
+			int id = (int) (keys[i] >> 32);
+			// same id twice: keep the first declared field
+			if (size != 0 && ids[size - 1] == id) {
+				continue;
+			}
+			ids[size] = id;
+			names[size] = declaredFields[(int) keys[i]].getName();
+			size++;
+		}
+		sIds = Arrays.copyOf(ids, size);
+		sNames = Arrays.copyOf(names, size);
+	}
+
+	/**
+	 * Returns name of the framework attribute, looked up in the default
+	 * {@link AttributeTable} if there is one, and else among the fields above.
+	 * Returns empty string if the attribute is unknown.
+	 */
+	public static String getName(int id) {
+		AttributeTable table = AttributeTable.getDefault();
+		if (table != null) {
+			String name = table.getName(id);
+			if (name != null) {
+				return name;
+			}
+		}
+		int index = Arrays.binarySearch(sIds, id);
+		if (index < 0) {
+			return "";
+		}
+		return sNames[index];
 	}
 
 }
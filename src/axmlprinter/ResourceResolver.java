@@ -0,0 +1,215 @@
+package axmlprinter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import android.util.TypedValue;
+
+/**
+ * Resolves resource IDs found in binary xml to names ("string/app_name",
+ * "android:attr/label") and values, using the APK's {@link ResourceTable}.
+ *
+ * Each ID is looked up in the table once; the name and value are then kept
+ * in a map keyed by the ID, so one resolver should be shared by all xml
+ * files of an APK:
+ *
+ * <pre>
+ * ResourceResolver resources = ResourceResolver.forApk(apk);
+ * parser.setResourceResolver(resources);
+ * </pre>
+ *
+ * Resolver is thread-safe.
+ */
+public final class ResourceResolver {
+
+	/**
+	 * Creates resolver for IDs of the table. Without a table, only framework
+	 * attributes known to {@link R_Default} are resolved.
+	 */
+	public ResourceResolver(ResourceTable table) {
+		m_table = table;
+		clear();
+	}
+
+	/**
+	 * Creates resolver for the APK's resources.arsc, or a table-less one if
+	 * the APK has none.
+	 */
+	public static ResourceResolver forApk(File apk) throws IOException {
+		ResourceTable table;
+		try {
+			table = ResourceTable.readFromApk(apk);
+		} catch (FileNotFoundException e) {
+			table = null;
+		}
+		return new ResourceResolver(table);
+	}
+
+	/**
+	 * Returns the table, or null.
+	 */
+	public ResourceTable getTable() {
+		return m_table;
+	}
+
+	/**
+	 * Returns "type/entry" name of the ID, prefixed with "android:" for
+	 * framework resources, or null if it's unknown.
+	 */
+	public synchronized String getName(int id) {
+		int slot = find(id);
+		return slot != -1 ? m_names[slot] : null;
+	}
+
+	/**
+	 * Returns {@link TypedValue} type of the ID's value, with references to
+	 * other resources followed, or -1 if there is no simple value.
+	 */
+	public synchronized int getValueType(int id) {
+		int slot = find(id);
+		return slot != -1 ? m_types[slot] : -1;
+	}
+
+	/**
+	 * Returns data of the ID's value, or 'defaultValue'.
+	 *
+	 * @see #getValueType(int)
+	 */
+	public synchronized int getValueData(int id, int defaultValue) {
+		int slot = find(id);
+		return slot != -1 && m_types[slot] != -1 ? m_data[slot] : defaultValue;
+	}
+
+	/**
+	 * Returns number of resolved IDs.
+	 */
+	public synchronized int size() {
+		return m_size;
+	}
+
+	/**
+	 * Drops all resolved IDs.
+	 */
+	public synchronized void clear() {
+		m_ids = new int[INITIAL_CAPACITY];
+		m_names = new String[INITIAL_CAPACITY];
+		m_types = new int[INITIAL_CAPACITY];
+		m_data = new int[INITIAL_CAPACITY];
+		m_size = 0;
+	}
+
+	// ///////////////////////////////// implementation
+
+	/**
+	 * Returns slot of the ID, resolving it first if needed, or -1 for ID 0
+	 * (@null).
+	 */
+	private int find(int id) {
+		if (id == 0) {
+			return -1;
+		}
+		int mask = m_ids.length - 1;
+		int slot = mixHash(id) & mask;
+		while (m_ids[slot] != 0) {
+			if (m_ids[slot] == id) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if ((m_size + 1) * 2 > m_ids.length) {
+			grow();
+			return find(id);
+		}
+		m_ids[slot] = id;
+		m_names[slot] = resolveName(id);
+		resolveValue(id, slot);
+		++m_size;
+		return slot;
+	}
+
+	private String resolveName(int id) {
+		String name = m_table != null ? m_table.getResourceName(id) : null;
+		if (name == null) {
+			if ((id >>> 16) == FRAMEWORK_ATTR) {
+				// R_Default returns "" for unknown attributes
+				name = R_Default.getName(id);
+				return name != null && name.length() != 0 ? "android:attr/" + name : null;
+			}
+			return null;
+		}
+		return (id >>> 24) == FRAMEWORK_PACKAGE ? "android:" + name : name;
+	}
+
+	/**
+	 * Stores the value, following references (up to a few, in case of a
+	 * cycle).
+	 */
+	private void resolveValue(int id, int slot) {
+		int type = -1;
+		int data = 0;
+		if (m_table != null) {
+			for (int i = 0; i != MAX_REFERENCE_DEPTH; ++i) {
+				type = m_table.getValueType(id);
+				data = m_table.getValueData(id, 0);
+				if (type != TypedValue.TYPE_REFERENCE || data == 0) {
+					break;
+				}
+				id = data;
+				type = -1;
+			}
+		}
+		m_types[slot] = type;
+		m_data[slot] = data;
+	}
+
+	private void grow() {
+		int[] ids = m_ids;
+		String[] names = m_names;
+		int[] types = m_types;
+		int[] data = m_data;
+		int capacity = ids.length * 2;
+		m_ids = new int[capacity];
+		m_names = new String[capacity];
+		m_types = new int[capacity];
+		m_data = new int[capacity];
+		int mask = capacity - 1;
+		for (int i = 0; i != ids.length; ++i) {
+			if (ids[i] != 0) {
+				int slot = mixHash(ids[i]) & mask;
+				while (m_ids[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				m_ids[slot] = ids[i];
+				m_names[slot] = names[i];
+				m_types[slot] = types[i];
+				m_data[slot] = data[i];
+			}
+		}
+	}
+
+	/**
+	 * IDs of a package differ only in the low bits, so they are spread
+	 * before masking.
+	 */
+	private static final int mixHash(int id) {
+		int hash = id * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	private final ResourceTable m_table;
+	/*
+	 * Open addressing map: ID 0 marks an empty slot, values are in the
+	 * parallel arrays.
+	 */
+	private int[] m_ids;
+	private String[] m_names;
+	private int[] m_types;
+	private int[] m_data;
+	private int m_size;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private static final int MAX_REFERENCE_DEPTH = 8;
+
+	private static final int FRAMEWORK_PACKAGE = 0x01, FRAMEWORK_ATTR = 0x0101;
+}
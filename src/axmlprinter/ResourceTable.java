@@ -0,0 +1,407 @@
+package axmlprinter;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import android.util.TypedValue;
+
+/**
+ * Compiled resource table (resources.arsc).
+ *
+ * Opening a table only walks the chunk headers: it reads the global, type
+ * and key string pools as {@link StringBlock}s (which decode strings on
+ * first access) and records where the type chunks of each package start.
+ * Entries are looked up in the mapped table when they are requested, so
+ * resolving a few IDs doesn't decode the whole table.
+ *
+ * <pre>
+ * ResourceTable table = ResourceTable.readFromApk(apk);
+ * table.getResourceName(0x7F040001); // "string/app_name"
+ * </pre>
+ *
+ * Table is not thread-safe; string pools cache decoded strings.
+ */
+public final class ResourceTable {
+
+	/**
+	 * Maps the table file.
+	 */
+	public static ResourceTable read(File arsc) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(arsc, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			return new ResourceTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Reads resources.arsc of the APK. The table is usually stored
+	 * uncompressed, and then it's mapped rather than read.
+	 *
+	 * @throws java.io.FileNotFoundException
+	 *             if the APK has no resource table.
+	 */
+	public static ResourceTable readFromApk(File apk) throws IOException {
+		ApkEntryReader reader = new ApkEntryReader();
+		try {
+			// reader is dropped, so the buffer stays valid
+			return new ResourceTable(reader.read(apk, RESOURCES_ENTRY));
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Indexes the table in the remaining bytes of the buffer. The buffer is
+	 * referenced, not copied, and must not be modified while the table is
+	 * used.
+	 *
+	 * @throws IOException
+	 *             if the table is malformed.
+	 */
+	public ResourceTable(ByteBuffer buffer) throws IOException {
+		m_buffer = buffer.slice();
+		m_buffer.order(ByteOrder.LITTLE_ENDIAN);
+		m_packages = new PackageChunk[256];
+
+		checkChunk(0, CHUNK_TABLE);
+		int limit = Math.min(m_buffer.getInt(4), m_buffer.limit());
+		int offset = m_buffer.getShort(2) & 0xFFFF;
+		while (offset + 8 <= limit) {
+			int type = m_buffer.getShort(offset) & 0xFFFF;
+			int size = checkChunk(offset, -1);
+			if (type == CHUNK_STRING_POOL && m_strings == null) {
+				m_strings = readStrings(offset);
+			} else if (type == CHUNK_PACKAGE) {
+				PackageChunk pkg = new PackageChunk(offset, size);
+				if (m_packages[pkg.m_id] == null) {
+					m_packages[pkg.m_id] = pkg;
+				}
+			}
+			offset += size;
+		}
+		if (m_strings == null) {
+			throw new IOException("Resource table has no string pool.");
+		}
+	}
+
+	/**
+	 * Returns the global string pool, which holds string values.
+	 */
+	public StringBlock getStrings() {
+		return m_strings;
+	}
+
+	/**
+	 * Returns whether the table has an entry with the ID.
+	 */
+	public boolean hasResource(int id) {
+		return findEntry(id) != -1;
+	}
+
+	/**
+	 * Returns name of the package the ID belongs to, or null.
+	 */
+	public String getPackageName(int id) {
+		PackageChunk pkg = m_packages[id >>> 24];
+		return pkg != null ? pkg.m_name : null;
+	}
+
+	/**
+	 * Returns type name ("string", "drawable", "attr", ...) of the ID, or null.
+	 */
+	public String getTypeName(int id) {
+		PackageChunk pkg = m_packages[id >>> 24];
+		if (pkg == null) {
+			return null;
+		}
+		return pkg.m_typeStrings.getString(((id >>> 16) & 0xFF) - pkg.m_typeIdOffset - 1);
+	}
+
+	/**
+	 * Returns entry name ("app_name") of the ID, or null if the table has no
+	 * such entry.
+	 */
+	public String getEntryName(int id) {
+		int entry = findEntry(id);
+		if (entry == -1) {
+			return null;
+		}
+		int flags = m_buffer.getShort(entry + 2) & 0xFFFF;
+		int key = (flags & FLAG_COMPACT) != 0 ? m_buffer.getShort(entry) & 0xFFFF : m_buffer.getInt(entry + 4);
+		return m_packages[id >>> 24].m_keyStrings.getString(key);
+	}
+
+	/**
+	 * Returns "type/entry" name of the ID, or null if the table has no such
+	 * entry.
+	 */
+	public String getResourceName(int id) {
+		String entry = getEntryName(id);
+		String type = entry != null ? getTypeName(id) : null;
+		return type != null ? type + "/" + entry : null;
+	}
+
+	/**
+	 * Returns {@link TypedValue} type of the ID's value, or -1 if the table
+	 * has no such entry or the entry is a bag (style, array, ...). The
+	 * default configuration is preferred.
+	 */
+	public int getValueType(int id) {
+		int value = findValue(id);
+		if (value == -1) {
+			return -1;
+		}
+		if (value < 0) {
+			return (m_buffer.getShort(~value + 2) >>> 8) & 0xFF;
+		}
+		return m_buffer.get(value + 3) & 0xFF;
+	}
+
+	/**
+	 * Returns data of the ID's value, or 'defaultValue'.
+	 *
+	 * @see #getValueType(int)
+	 */
+	public int getValueData(int id, int defaultValue) {
+		int value = findValue(id);
+		if (value == -1) {
+			return defaultValue;
+		}
+		return m_buffer.getInt((value < 0 ? ~value : value) + 4);
+	}
+
+	/**
+	 * Returns the ID's value if it's a string, or null.
+	 */
+	public String getString(int id) {
+		if (getValueType(id) != TypedValue.TYPE_STRING) {
+			return null;
+		}
+		return m_strings.getString(getValueData(id, -1));
+	}
+
+	// ///////////////////////////////// implementation
+
+	/**
+	 * One package chunk: its pools, and the offsets of its type chunks by
+	 * type index.
+	 */
+	private final class PackageChunk {
+
+		PackageChunk(int offset, int size) throws IOException {
+			int headerSize = m_buffer.getShort(offset + 2) & 0xFFFF;
+			if (headerSize < PACKAGE_HEADER_SIZE) {
+				throw new IOException("Invalid package header size (" + headerSize + ").");
+			}
+			m_id = m_buffer.getInt(offset + 8) & 0xFF;
+			m_name = readName(offset + 12);
+			m_typeStrings = readStrings(offset + m_buffer.getInt(offset + 268));
+			m_keyStrings = readStrings(offset + m_buffer.getInt(offset + 276));
+			m_typeIdOffset = headerSize >= PACKAGE_HEADER_SIZE + 4 ? m_buffer.getInt(offset + 284) : 0;
+
+			int[] counts = new int[256];
+			int[][] types = new int[256][];
+			int end = offset + size;
+			int chunk = offset + headerSize;
+			while (chunk + 8 <= end) {
+				int chunkSize = checkChunk(chunk, -1);
+				if ((m_buffer.getShort(chunk) & 0xFFFF) == CHUNK_TYPE) {
+					int type = m_buffer.get(chunk + 8) & 0xFF;
+					int[] chunks = types[type];
+					if (chunks == null) {
+						chunks = types[type] = new int[4];
+					} else if (counts[type] == chunks.length) {
+						int[] grown = new int[chunks.length * 2];
+						System.arraycopy(chunks, 0, grown, 0, chunks.length);
+						chunks = types[type] = grown;
+					}
+					chunks[counts[type]++] = chunk;
+				}
+				chunk += chunkSize;
+			}
+			for (int i = 0; i != types.length; ++i) {
+				if (types[i] != null && types[i].length != counts[i]) {
+					int[] trimmed = new int[counts[i]];
+					System.arraycopy(types[i], 0, trimmed, 0, counts[i]);
+					types[i] = trimmed;
+				}
+			}
+			m_types = types;
+		}
+
+		private String readName(int offset) {
+			StringBuilder name = new StringBuilder(32);
+			for (int i = 0; i != 128; ++i) {
+				char c = m_buffer.getChar(offset + i * 2);
+				if (c == 0) {
+					break;
+				}
+				name.append(c);
+			}
+			return name.toString();
+		}
+
+		final int m_id;
+		final String m_name;
+		final StringBlock m_typeStrings;
+		final StringBlock m_keyStrings;
+		final int m_typeIdOffset;
+		final int[][] m_types;
+	}
+
+	/**
+	 * Returns offset of the entry, preferring the default configuration, or
+	 * -1.
+	 */
+	private int findEntry(int id) {
+		PackageChunk pkg = m_packages[id >>> 24];
+		if (pkg == null) {
+			return -1;
+		}
+		int type = ((id >>> 16) & 0xFF) - pkg.m_typeIdOffset;
+		if (type <= 0 || type >= pkg.m_types.length || pkg.m_types[type] == null) {
+			return -1;
+		}
+		int index = id & 0xFFFF;
+		int found = -1;
+		for (int chunk : pkg.m_types[type]) {
+			int entry = findEntry(chunk, index);
+			if (entry != -1) {
+				if (isDefaultConfig(chunk)) {
+					return entry;
+				}
+				if (found == -1) {
+					found = entry;
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Returns offset of the entry in the type chunk, or -1.
+	 */
+	private int findEntry(int chunk, int index) {
+		int headerSize = m_buffer.getShort(chunk + 2) & 0xFFFF;
+		int flags = m_buffer.get(chunk + 9) & 0xFF;
+		int entryCount = m_buffer.getInt(chunk + 12);
+		int entriesStart = m_buffer.getInt(chunk + 16);
+		int offsets = chunk + headerSize;
+		int offset;
+		if ((flags & TYPE_FLAG_SPARSE) != 0) {
+			// (index, offset / 4) pairs, sorted by index
+			int low = 0;
+			int high = entryCount - 1;
+			offset = -1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				int middleIndex = m_buffer.getShort(offsets + middle * 4) & 0xFFFF;
+				if (middleIndex < index) {
+					low = middle + 1;
+				} else if (middleIndex > index) {
+					high = middle - 1;
+				} else {
+					offset = (m_buffer.getShort(offsets + middle * 4 + 2) & 0xFFFF) * 4;
+					break;
+				}
+			}
+		} else if (index >= entryCount) {
+			return -1;
+		} else if ((flags & TYPE_FLAG_OFFSET16) != 0) {
+			offset = m_buffer.getShort(offsets + index * 2) & 0xFFFF;
+			offset = offset == 0xFFFF ? -1 : offset * 4;
+		} else {
+			offset = m_buffer.getInt(offsets + index * 4);
+		}
+		if (offset == -1) {
+			return -1;
+		}
+		int entry = chunk + entriesStart + offset;
+		if (offset < 0 || entry + 8 > chunk + m_buffer.getInt(chunk + 4)) {
+			return -1;
+		}
+		return entry;
+	}
+
+	/**
+	 * Returns offset of the entry's Res_value, or for compact entries, the
+	 * complement of the entry offset. Returns -1 if there is no entry or it's
+	 * a bag.
+	 */
+	private int findValue(int id) {
+		int entry = findEntry(id);
+		if (entry == -1) {
+			return -1;
+		}
+		int flags = m_buffer.getShort(entry + 2) & 0xFFFF;
+		if ((flags & FLAG_COMPACT) != 0) {
+			return ~entry;
+		}
+		if ((flags & FLAG_COMPLEX) != 0) {
+			return -1;
+		}
+		int value = entry + (m_buffer.getShort(entry) & 0xFFFF);
+		return value + 8 <= m_buffer.limit() ? value : -1;
+	}
+
+	/**
+	 * Returns whether the configuration of the type chunk is empty (all
+	 * fields after its size are zero).
+	 */
+	private boolean isDefaultConfig(int chunk) {
+		int config = chunk + 20;
+		int size = m_buffer.getInt(config);
+		int end = Math.min(config + size, m_buffer.limit());
+		for (int i = config + 4; i < end; ++i) {
+			if (m_buffer.get(i) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private StringBlock readStrings(int offset) throws IOException {
+		checkChunk(offset, CHUNK_STRING_POOL);
+		ByteBuffer pool = m_buffer.duplicate();
+		pool.position(offset);
+		return StringBlock.read(new IntReader(pool, false));
+	}
+
+	/**
+	 * Checks the chunk header at the offset, and returns chunk size.
+	 */
+	private int checkChunk(int offset, int expectedType) throws IOException {
+		if (offset < 0 || offset + 8 > m_buffer.limit()) {
+			throw new IOException("Chunk offset " + offset + " is out of the table.");
+		}
+		int type = m_buffer.getShort(offset) & 0xFFFF;
+		if (expectedType != -1 && type != expectedType) {
+			throw new IOException("Expected chunk of type 0x" + Integer.toHexString(expectedType) + ", read 0x" + Integer.toHexString(type) + ".");
+		}
+		int size = m_buffer.getInt(offset + 4);
+		if (size < 8 || size > m_buffer.limit() - offset) {
+			throw new IOException("Invalid size of chunk at " + offset + " (" + size + ").");
+		}
+		return size;
+	}
+
+	private final ByteBuffer m_buffer;
+	private final PackageChunk[] m_packages;
+	private StringBlock m_strings;
+
+	static final String RESOURCES_ENTRY = "resources.arsc";
+
+	private static final int CHUNK_STRING_POOL = 0x0001, CHUNK_TABLE = 0x0002, CHUNK_PACKAGE = 0x0200, CHUNK_TYPE = 0x0201;
+
+	private static final int PACKAGE_HEADER_SIZE = 284;
+
+	private static final int TYPE_FLAG_SPARSE = 0x01, TYPE_FLAG_OFFSET16 = 0x02;
+
+	private static final int FLAG_COMPLEX = 0x0001, FLAG_COMPACT = 0x0008;
+}
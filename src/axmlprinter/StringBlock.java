@@ -16,12 +16,24 @@ package axmlprinter;
  */
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 
 /**
  * @author Dmitry Skiba
  * 
  *         Block of strings, used in binary xml and arsc.
  * 
+ *         Offsets, string data and styles are kept as buffers returned by
+ *         IntReader, so a block read from a ByteBuffer references it instead
+ *         of copying. Strings are decoded on first access and cached, so
+ *         repeated lookups of the same index return the same String.
+ * 
+ *         Both UTF-16 and UTF-8 (flag 0x100, written by newer aapt) pools are
+ *         supported.
+ * 
  *         TODO: - implement get()
  * 
  */
@@ -32,34 +44,67 @@ public class StringBlock {
 	 * be at the chunk type.
 	 */
 	public static StringBlock read(IntReader reader) throws IOException {
+		return read(reader, null);
+	}
+
+	/**
+	 * Same as read(IntReader), but decoded strings are looked up in (and
+	 * added to) the interner, which can be shared between blocks.
+	 */
+	public static StringBlock read(IntReader reader, StringInterner interner) throws IOException {
+		return read(reader, interner, null);
+	}
+
+	/**
+	 * Same as read(IntReader, StringInterner), but if 'block' is not null,
+	 * it is reloaded and returned, keeping its caches at their grown
+	 * capacities. Strings previously returned by the block stay valid.
+	 */
+	static StringBlock read(IntReader reader, StringInterner interner, StringBlock block) throws IOException {
+		if (block == null) {
+			block = new StringBlock();
+		} else {
+			block.release();
+		}
 		ChunkUtil.readCheckType(reader, CHUNK_TYPE);
 		int chunkSize = reader.readInt();
 		int stringCount = reader.readInt();
 		int styleOffsetCount = reader.readInt();
-		/* ? */reader.readInt();
+		int flags = reader.readInt();
 		int stringsOffset = reader.readInt();
 		int stylesOffset = reader.readInt();
 
-		StringBlock block = new StringBlock();
-		block.m_stringOffsets = reader.readIntArray(stringCount);
+		block.m_isUTF8 = ((flags & UTF8_FLAG) != 0);
+		block.m_interner = interner;
+		block.m_stringOffsets = reader.readIntBuffer(stringCount, block.m_spareStringOffsets);
+		if (block.m_cache == null || block.m_cache.length < stringCount) {
+			block.m_cache = new String[stringCount];
+		}
 		if (styleOffsetCount != 0) {
-			block.m_styleOffsets = reader.readIntArray(styleOffsetCount);
+			block.m_styleOffsets = reader.readIntBuffer(styleOffsetCount, block.m_spareStyleOffsets);
 		}
 		{
 			int size = ((stylesOffset == 0) ? chunkSize : stylesOffset) - stringsOffset;
 			if ((size % 4) != 0) {
 				throw new IOException("String data size is not multiple of 4 (" + size + ").");
 			}
-			block.m_strings = reader.readIntArray(size / 4);
+			block.m_strings = reader.readBuffer(size, block.m_spareStrings);
 		}
 		if (stylesOffset != 0) {
 			int size = (chunkSize - stylesOffset);
 			if ((size % 4) != 0) {
 				throw new IOException("Style data size is not multiple of 4 (" + size + ").");
 			}
-			block.m_styles = reader.readIntArray(size / 4);
+			block.m_styles = reader.readIntBuffer(size / 4, block.m_spareStyles);
 		}
 
+		if (reader.getStream() != null) {
+			// Buffers are copies, owned by the block.
+			block.m_spareStringOffsets = block.m_stringOffsets;
+			block.m_spareStrings = block.m_strings;
+			block.m_spareStyleOffsets = (block.m_styleOffsets != null ? block.m_styleOffsets : block.m_spareStyleOffsets);
+			block.m_spareStyles = (block.m_styles != null ? block.m_styles : block.m_spareStyles);
+		}
 		return block;
 	}
 
@@ -67,24 +112,22 @@ public class StringBlock {
 	 * Returns number of strings in block.
 	 */
 	public int getCount() {
-		return m_stringOffsets != null ? m_stringOffsets.length : 0;
+		return m_stringOffsets != null ? m_stringOffsets.limit() : 0;
 	}
 
 	/**
 	 * Returns raw string (without any styling information) at specified index.
 	 */
 	public String getString(int index) {
-		if (index < 0 || m_stringOffsets == null || index >= m_stringOffsets.length) {
+		if (index < 0 || m_stringOffsets == null || index >= m_stringOffsets.limit()) {
 			return null;
 		}
-		int offset = m_stringOffsets[index];
-		int length = getShort(m_strings, offset);
-		StringBuilder result = new StringBuilder(length);
-		for (; length != 0; length -= 1) {
-			offset += 2;
-			result.append((char) getShort(m_strings, offset));
+		String string = m_cache[index];
+		if (string == null) {
+			string = decodeString(m_stringOffsets.get(index));
+			m_cache[index] = string;
 		}
-		return result.toString();
+		return string;
 	}
 
 	/**
@@ -153,29 +196,29 @@ public class StringBlock {
 
 	/**
 	 * Finds index of the string. Returns -1 if the string was not found.
+	 * 
+	 * First call builds a hash index of the block, so lookups do not depend
+	 * on the number of strings.
 	 */
 	public int find(String string) {
-		if (string == null) {
+		if (string == null || m_stringOffsets == null) {
 			return -1;
 		}
-		for (int i = 0; i != m_stringOffsets.length; ++i) {
-			int offset = m_stringOffsets[i];
-			int length = getShort(m_strings, offset);
-			if (length != string.length()) {
-				continue;
-			}
-			int j = 0;
-			for (; j != length; ++j) {
-				offset += 2;
-				if (string.charAt(j) != getShort(m_strings, offset)) {
-					break;
-				}
+		if (!m_indexed) {
+			buildIndex();
+		}
+		int hash = string.hashCode();
+		int mask = m_index.length - 1;
+		for (int slot = mixHash(hash) & mask;; slot = (slot + 1) & mask) {
+			int entry = m_index[slot];
+			if (entry == 0) {
+				return -1;
 			}
-			if (j == length) {
-				return i;
+			int index = entry - 1;
+			if (m_hashes[index] == hash && matches(index, string)) {
+				return index;
 			}
 		}
-		return -1;
 	}
 
 	// /////////////////////////////////////////// implementation
@@ -183,21 +226,176 @@ public class StringBlock {
 	private StringBlock() {
 	}
 
+	/**
+	 * Drops references to pool data and cached strings, but keeps arrays for
+	 * reuse by read().
+	 */
+	final void release() {
+		if (m_stringOffsets != null) {
+			Arrays.fill(m_cache, 0, m_stringOffsets.limit(), null);
+		}
+		m_stringOffsets = null;
+		m_strings = null;
+		m_styleOffsets = null;
+		m_styles = null;
+		m_interner = null;
+		m_indexed = false;
+	}
+
+	/**
+	 * Builds open-addressing table of (index + 1) keyed by String.hashCode()
+	 * of each string. Strings are inserted in order, so for duplicates the
+	 * lowest index is found first, as with a linear scan.
+	 */
+	private void buildIndex() {
+		int count = m_stringOffsets.limit();
+		int capacity = 16;
+		while (capacity < count * 2) {
+			capacity <<= 1;
+		}
+		int[] hashes = m_hashes;
+		int[] index = m_index;
+		if (hashes == null || hashes.length < count) {
+			hashes = new int[count];
+		}
+		if (index == null || index.length < capacity) {
+			index = new int[capacity];
+		} else {
+			Arrays.fill(index, 0);
+		}
+		int mask = index.length - 1;
+		for (int i = 0; i != count; ++i) {
+			int hash = hashString(i);
+			hashes[i] = hash;
+			int slot = mixHash(hash) & mask;
+			while (index[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			index[slot] = i + 1;
+		}
+		m_hashes = hashes;
+		m_index = index;
+		m_indexed = true;
+	}
+
+	/**
+	 * Returns String.hashCode() of the string at index. UTF-16 strings are
+	 * hashed directly from the pool, without decoding.
+	 */
+	private int hashString(int index) {
+		if (m_isUTF8) {
+			return getString(index).hashCode();
+		}
+		int offset = m_stringOffsets.get(index);
+		int length = getShort(m_strings, offset);
+		if ((length & 0x8000) != 0) {
+			offset += 2;
+			length = ((length & 0x7FFF) << 16) | getShort(m_strings, offset);
+		}
+		int hash = 0;
+		for (; length != 0; length -= 1) {
+			offset += 2;
+			hash = 31 * hash + getShort(m_strings, offset);
+		}
+		return hash;
+	}
+
+	private boolean matches(int index, String string) {
+		if (m_isUTF8) {
+			return string.equals(getString(index));
+		}
+		int offset = m_stringOffsets.get(index);
+		int length = getShort(m_strings, offset);
+		if ((length & 0x8000) != 0) {
+			offset += 2;
+			length = ((length & 0x7FFF) << 16) | getShort(m_strings, offset);
+		}
+		if (length != string.length()) {
+			return false;
+		}
+		for (int j = 0; j != length; ++j) {
+			offset += 2;
+			if (string.charAt(j) != getShort(m_strings, offset)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static final int mixHash(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	private String decodeString(int offset) {
+		if (m_isUTF8) {
+			return decodeUTF8String(offset);
+		}
+		int length = getShort(m_strings, offset);
+		offset += 2;
+		if ((length & 0x8000) != 0) {
+			length = ((length & 0x7FFF) << 16) | getShort(m_strings, offset);
+			offset += 2;
+		}
+		if (m_interner != null) {
+			return m_interner.intern(m_strings, offset, length * 2, UTF_16LE);
+		}
+		// raw chars, not a charset decode, so that malformed surrogates are
+		// kept as they are (and find() still matches the string)
+		char[] chars = new char[length];
+		for (int i = 0; i != length; ++i) {
+			chars[i] = (char) getShort(m_strings, offset + i * 2);
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * UTF-8 string is prefixed by its length in chars and then in bytes, each
+	 * stored in one byte, or in two if the high bit of the first one is set.
+	 */
+	private String decodeUTF8String(int offset) {
+		if ((m_strings.get(offset) & 0x80) != 0) {
+			offset += 1;
+		}
+		offset += 1;
+		int length = (m_strings.get(offset) & 0xFF);
+		offset += 1;
+		if ((length & 0x80) != 0) {
+			length = ((length & 0x7F) << 8) | (m_strings.get(offset) & 0xFF);
+			offset += 1;
+		}
+		return decode(offset, length, UTF_8);
+	}
+
+	private String decode(int offset, int length, Charset charset) {
+		if (m_interner != null) {
+			return m_interner.intern(m_strings, offset, length, charset);
+		}
+		if (m_strings.hasArray()) {
+			return new String(m_strings.array(), m_strings.arrayOffset() + offset, length, charset);
+		}
+		byte[] bytes = new byte[length];
+		for (int i = 0; i != length; ++i) {
+			bytes[i] = m_strings.get(offset + i);
+		}
+		return new String(bytes, charset);
+	}
+
 	/**
 	 * Returns style information - array of int triplets, where in each triplet:
 	 * * first int is index of tag name ('b','i', etc.) * second int is tag
 	 * start index in string * third int is tag end index in string
 	 */
 	private int[] getStyle(int index) {
-		if (m_styleOffsets == null || m_styles == null || index >= m_styleOffsets.length) {
+		if (m_styleOffsets == null || m_styles == null || index >= m_styleOffsets.limit()) {
 			return null;
 		}
-		int offset = m_styleOffsets[index] / 4;
+		int offset = m_styleOffsets.get(index) / 4;
+		int length = m_styles.limit();
 		int style[];
 		{
 			int count = 0;
-			for (int i = offset; i < m_styles.length; ++i) {
-				if (m_styles[i] == -1) {
+			for (int i = offset; i < length; ++i) {
+				if (m_styles.get(i) == -1) {
 					break;
 				}
 				count += 1;
@@ -207,28 +405,42 @@ public class StringBlock {
 			}
 			style = new int[count];
 		}
-		for (int i = offset, j = 0; i < m_styles.length;) {
-			if (m_styles[i] == -1) {
+		for (int i = offset, j = 0; i < length;) {
+			if (m_styles.get(i) == -1) {
 				break;
 			}
-			style[j++] = m_styles[i++];
+			style[j++] = m_styles.get(i++);
 		}
 		return style;
 	}
 
-	private static final int getShort(int[] array, int offset) {
-		int value = array[offset / 4];
-		if ((offset % 4) / 2 == 0) {
-			return (value & 0xFFFF);
-		} else {
-			return (value >>> 16);
-		}
+	private static final int getShort(ByteBuffer buffer, int offset) {
+		return (buffer.getShort(offset) & 0xFFFF);
 	}
 
-	private int[] m_stringOffsets;
-	private int[] m_strings;
-	private int[] m_styleOffsets;
-	private int[] m_styles;
+	private IntBuffer m_stringOffsets;
+	private ByteBuffer m_strings;
+	private IntBuffer m_styleOffsets;
+	private IntBuffer m_styles;
+	private String[] m_cache;
+
+	/*
+	 * Buffers owned by the block (not views of a caller's buffer), reused by
+	 * read().
+	 */
+	private IntBuffer m_spareStringOffsets;
+	private ByteBuffer m_spareStrings;
+	private IntBuffer m_spareStyleOffsets;
+	private IntBuffer m_spareStyles;
+	private boolean m_isUTF8;
+	private StringInterner m_interner;
+	private int[] m_hashes;
+	private int[] m_index;
+	private boolean m_indexed;
 
 	private static final int CHUNK_TYPE = 0x001C0001;
+	private static final int UTF8_FLAG = 0x00000100;
+
+	private static final Charset UTF_16LE = Charset.forName("UTF-16LE");
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
 }
\ No newline at end of file
@@ -0,0 +1,167 @@
+package axmlprinter;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded table of decoded strings, which can be shared by StringBlocks of
+ * many documents (and threads), so that strings repeated across documents
+ * (action names, permissions, namespace URIs) are kept only once.
+ * 
+ * Strings are keyed by their raw encoded bytes, so a hit does not decode.
+ * The table is direct-mapped: each hash maps to one slot, and a miss replaces
+ * whatever was there. Entries are immutable, so lookups need no locking.
+ */
+public final class StringInterner {
+
+	/**
+	 * Creates interner with the given number of slots (rounded up to a power
+	 * of two).
+	 */
+	public StringInterner(int capacity) {
+		int size = 16;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		m_entries = new Entry[size];
+	}
+
+	/**
+	 * Returns string decoded from 'length' bytes of the buffer starting at
+	 * 'offset'. Buffer position is not used or modified. UTF-16LE is decoded
+	 * as raw chars, as StringBlock does, so malformed surrogates are kept.
+	 */
+	public String intern(ByteBuffer buffer, int offset, int length, Charset charset) {
+		if (length > MAX_LENGTH) {
+			return decode(getBytes(buffer, offset, length), charset);
+		}
+		int hash = charset.hashCode();
+		if (buffer.hasArray()) {
+			byte[] array = buffer.array();
+			for (int i = buffer.arrayOffset() + offset, e = i + length; i != e; ++i) {
+				hash = 31 * hash + array[i];
+			}
+		} else {
+			for (int i = offset, e = offset + length; i != e; ++i) {
+				hash = 31 * hash + buffer.get(i);
+			}
+		}
+		int slot = (hash ^ (hash >>> 16)) & (m_entries.length - 1);
+		Entry entry = m_entries[slot];
+		if (entry != null && entry.hash == hash && entry.charset.equals(charset) && entry.matches(buffer, offset, length)) {
+			m_hits.incrementAndGet();
+			return entry.value;
+		}
+		m_misses.incrementAndGet();
+		if (entry != null) {
+			m_evictions.incrementAndGet();
+		}
+		byte[] bytes = getBytes(buffer, offset, length);
+		String value = decode(bytes, charset);
+		m_entries[slot] = new Entry(hash, bytes, charset, value);
+		return value;
+	}
+
+	/**
+	 * Returns number of lookups that returned a cached string.
+	 */
+	public long getHitCount() {
+		return m_hits.get();
+	}
+
+	/**
+	 * Returns number of lookups that had to decode.
+	 */
+	public long getMissCount() {
+		return m_misses.get();
+	}
+
+	/**
+	 * Returns number of entries replaced by a colliding string.
+	 */
+	public long getEvictionCount() {
+		return m_evictions.get();
+	}
+
+	/**
+	 * Removes all strings and resets statistics.
+	 */
+	public void clear() {
+		for (int i = 0; i != m_entries.length; ++i) {
+			m_entries[i] = null;
+		}
+		m_hits.set(0);
+		m_misses.set(0);
+		m_evictions.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "StringInterner(hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + ")";
+	}
+
+	// ///////////////////////////////// implementation
+
+	private static final class Entry {
+		Entry(int hash, byte[] bytes, Charset charset, String value) {
+			this.hash = hash;
+			this.bytes = bytes;
+			this.charset = charset;
+			this.value = value;
+		}
+
+		final boolean matches(ByteBuffer buffer, int offset, int length) {
+			if (bytes.length != length) {
+				return false;
+			}
+			for (int i = 0; i != length; ++i) {
+				if (bytes[i] != buffer.get(offset + i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		final int hash;
+		final byte[] bytes;
+		final Charset charset;
+		final String value;
+	}
+
+	private static String decode(byte[] bytes, Charset charset) {
+		if (!UTF_16LE.equals(charset)) {
+			return new String(bytes, charset);
+		}
+		char[] chars = new char[bytes.length / 2];
+		for (int i = 0; i != chars.length; ++i) {
+			chars[i] = (char) ((bytes[i * 2] & 0xFF) | (bytes[i * 2 + 1] << 8));
+		}
+		return new String(chars);
+	}
+
+	private static byte[] getBytes(ByteBuffer buffer, int offset, int length) {
+		byte[] bytes = new byte[length];
+		if (buffer.hasArray()) {
+			System.arraycopy(buffer.array(), buffer.arrayOffset() + offset, bytes, 0, length);
+		} else {
+			for (int i = 0; i != length; ++i) {
+				bytes[i] = buffer.get(offset + i);
+			}
+		}
+		return bytes;
+	}
+
+	// ///////////////////////////////// data
+
+	private final Entry[] m_entries;
+	private final AtomicLong m_hits = new AtomicLong();
+	private final AtomicLong m_misses = new AtomicLong();
+	private final AtomicLong m_evictions = new AtomicLong();
+
+	/**
+	 * Longer strings (in bytes) are decoded but not interned.
+	 */
+	private static final int MAX_LENGTH = 256;
+
+	private static final Charset UTF_16LE = Charset.forName("UTF-16LE");
+}
@@ -10,6 +10,8 @@ import java.io.Serializable;
  * {@link #resolveSupportsScreensValues(int)}
  */
 public final class SupportsScreens implements Serializable {
+	private static final long serialVersionUID = -1031768423630836307L;
+
 	private Boolean mResizeable;
 	private Boolean mAnyDensity;
 	private Boolean mSmallScreens;
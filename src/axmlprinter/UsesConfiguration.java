@@ -5,6 +5,7 @@ import java.io.Serializable;
  * Class representing the <code>uses-configuration</code> node in the manifest.
  */
 public final class UsesConfiguration implements Serializable {
+	private static final long serialVersionUID = 2607909739135794379L;
 	Boolean mReqFiveWayNav;
 	Boolean mReqHardKeyboard;
 	Keyboard mReqKeyboardType;
@@ -5,6 +5,7 @@ import java.io.Serializable;
  * Class representing a <code>uses-feature</code> node in the manifest.
  */
 public final class UsesFeature implements Serializable {
+	private static final long serialVersionUID = 8127375099539224849L;
 	String mName;
 	int mGlEsVersion = 0;
 	Boolean mRequired = Boolean.TRUE; // default is true even if missing
@@ -6,6 +6,7 @@ import java.io.Serializable;
  * Class representing a <code>uses-library</code> node in the manifest.
  */
 public final class UsesLibrary implements Serializable {
+	private static final long serialVersionUID = 6548695323327171303L;
 	String mName;
 	Boolean mRequired = Boolean.TRUE; // default is true even if missing
 